@@ -1,6 +1,7 @@
 package com.db.awmd.challenge.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.math.BigDecimal;
 import javax.validation.constraints.Min;
@@ -20,6 +21,20 @@ public class Account {
   @Min(value = 0, message = "Initial balance must be positive.")
   private BigDecimal balance;
 
+  /**
+   * Funds reserved by authorization holds. They are not part of the available balance until the hold is released, or
+   * leave the account when it is settled.
+   */
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  private BigDecimal heldBalance = BigDecimal.ZERO;
+
+  /**
+   * Dense internal handle the repository assigns when it first stores the account, see
+   * {@link com.db.awmd.challenge.repository.AccountIdDictionary}. Used instead of the id for indexing and lock order.
+   */
+  @JsonIgnore
+  private int handle = -1;
+
   public Account(String accountId) {
     this.accountId = accountId;
     this.balance = BigDecimal.ZERO;
@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import lombok.Data;
+
+/**
+ * Balance of an account as of a committed change, pushed to balance stream subscribers.
+ */
+@Data
+public class BalanceUpdate {
+
+  private final String accountId;
+
+  private final BigDecimal balance;
+
+  /**
+   * Increases with every change of the account, so that a subscriber never replaces a balance with an older one.
+   */
+  private final long sequence;
+}
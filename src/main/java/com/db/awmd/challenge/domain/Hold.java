@@ -0,0 +1,30 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.service.TimingWheel;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.math.BigDecimal;
+import lombok.Data;
+
+/**
+ * Funds of an account reserved by an authorization, until they are settled, released or the hold expires.
+ */
+@Data
+public class Hold {
+
+  private final String id;
+
+  private final String accountId;
+
+  private final BigDecimal amount;
+
+  /**
+   * Expiry time in epoch milliseconds, a hold still open then is released automatically.
+   */
+  private final long expiresAt;
+
+  /**
+   * Pending expiry of the open hold, cancelled when it is settled or released first.
+   */
+  @JsonIgnore
+  private TimingWheel.Timeout<String> expiry;
+}
@@ -0,0 +1,34 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.math.BigDecimal;
+import javax.validation.constraints.NotNull;
+import lombok.Data;
+
+/**
+ * Settlement of a hold in favour of another account.
+ */
+@Data
+public class HoldSettlement {
+
+  @NotNull
+  private final String holdId;
+
+  @NotNull
+  private final String toAccountId;
+
+  /**
+   * Amount to settle, up to the held amount; the whole hold if null. Whatever is not settled is released.
+   */
+  private final BigDecimal amount;
+
+  @JsonCreator
+  public HoldSettlement(@JsonProperty("holdId") String holdId,
+    @JsonProperty("toAccountId") String toAccountId,
+    @JsonProperty("amount") BigDecimal amount) {
+    this.holdId = holdId;
+    this.toAccountId = toAccountId;
+    this.amount = amount;
+  }
+}
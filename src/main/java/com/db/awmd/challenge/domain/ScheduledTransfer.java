@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import lombok.Data;
+
+/**
+ * Transfer booked to be executed at a future point in time.
+ */
+@Data
+public class ScheduledTransfer {
+
+  private final String id;
+
+  private final String fromAccountId;
+
+  private final String toAccountId;
+
+  private final BigDecimal amount;
+
+  /**
+   * Due time in epoch milliseconds.
+   */
+  private final long executeAt;
+}
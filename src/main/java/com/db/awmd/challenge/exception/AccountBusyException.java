@@ -0,0 +1,11 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * Thrown when a transfer is shed because one of its accounts already has too many transfers in flight.
+ */
+public class AccountBusyException extends RuntimeException {
+	
+	public AccountBusyException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,11 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * Thrown when an audit is requested while another one is still running.
+ */
+public class AuditInProgressException extends RuntimeException {
+	
+	public AuditInProgressException(String message) {
+		super(message);
+	}
+}
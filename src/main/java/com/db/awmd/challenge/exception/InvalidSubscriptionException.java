@@ -0,0 +1,11 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * Thrown when a balance subscription names no accounts or more accounts than a subscriber may follow.
+ */
+public class InvalidSubscriptionException extends RuntimeException {
+	
+	public InvalidSubscriptionException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,11 @@
+package com.db.awmd.challenge.exception;
+
+/**
+ * Thrown when a transfer is shed because the service is running at its current concurrency limit.
+ */
+public class ServiceOverloadedException extends RuntimeException {
+	
+	public ServiceOverloadedException(String message) {
+		super(message);
+	}
+}
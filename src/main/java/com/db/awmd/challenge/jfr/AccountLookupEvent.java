@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("com.db.awmd.challenge.AccountLookup")
+@Label("Account Lookup")
+@Description("Lookup of one of the transfer's accounts in the repository")
+@Threshold("1 ms")
+public class AccountLookupEvent extends TransferStageEvent {
+
+	@Label("Account Id")
+	private final String accountId;
+
+	public AccountLookupEvent(String accountId) {
+		this.accountId = accountId;
+	}
+}
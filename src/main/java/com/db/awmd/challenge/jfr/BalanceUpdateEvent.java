@@ -0,0 +1,13 @@
+package com.db.awmd.challenge.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("com.db.awmd.challenge.BalanceUpdate")
+@Label("Balance Update")
+@Description("Balance check and update of both accounts, including the write to the repository, under both monitors")
+@Threshold("1 ms")
+public class BalanceUpdateEvent extends TransferStageEvent {
+}
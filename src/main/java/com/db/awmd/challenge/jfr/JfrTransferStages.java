@@ -0,0 +1,49 @@
+package com.db.awmd.challenge.jfr;
+
+import jdk.jfr.EventType;
+
+/**
+ * Stages recorded as the events of this package, allocated only while a recording enables them.
+ */
+final class JfrTransferStages extends TransferStages {
+
+	private final EventType validation = EventType.getEventType(TransferValidationEvent.class);
+
+	private final EventType accountLookup = EventType.getEventType(AccountLookupEvent.class);
+
+	private final EventType monitorWait = EventType.getEventType(MonitorWaitEvent.class);
+
+	private final EventType balanceUpdate = EventType.getEventType(BalanceUpdateEvent.class);
+
+	private final EventType notification = EventType.getEventType(TransferNotificationEvent.class);
+
+	@Override
+	public TransferStage validation() {
+		return validation.isEnabled() ? begin(new TransferValidationEvent()) : NONE;
+	}
+
+	@Override
+	public TransferStage accountLookup(String accountId) {
+		return accountLookup.isEnabled() ? begin(new AccountLookupEvent(accountId)) : NONE;
+	}
+
+	@Override
+	public TransferStage monitorWait(String accountId, int lockOrder) {
+		return monitorWait.isEnabled() ? begin(new MonitorWaitEvent(accountId, lockOrder)) : NONE;
+	}
+
+	@Override
+	public TransferStage balanceUpdate() {
+		return balanceUpdate.isEnabled() ? begin(new BalanceUpdateEvent()) : NONE;
+	}
+
+	@Override
+	public TransferStage notification(String accountId) {
+		return notification.isEnabled() ? begin(new TransferNotificationEvent(accountId)) : NONE;
+	}
+
+	private static TransferStage begin(TransferStageEvent event) {
+		event.begin();
+		return event;
+	}
+}
@@ -0,0 +1,25 @@
+package com.db.awmd.challenge.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("com.db.awmd.challenge.MonitorWait")
+@Label("Account Monitor Wait")
+@Description("Time spent waiting for an account monitor, the first or the second one the transfer locks")
+@Threshold("10 ms")
+public class MonitorWaitEvent extends TransferStageEvent {
+
+	@Label("Locked Account Id")
+	private final String accountId;
+
+	@Label("Lock Order")
+	@Description("1 for the first monitor taken, 2 for the second")
+	private final int lockOrder;
+
+	public MonitorWaitEvent(String accountId, int lockOrder) {
+		this.accountId = accountId;
+		this.lockOrder = lockOrder;
+	}
+}
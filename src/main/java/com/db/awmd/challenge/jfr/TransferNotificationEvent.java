@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("com.db.awmd.challenge.TransferNotification")
+@Label("Transfer Notification")
+@Description("Notification of one of the account owners about the transfer")
+@Threshold("10 ms")
+public class TransferNotificationEvent extends TransferStageEvent {
+
+	@Label("Account Id")
+	private final String accountId;
+
+	public TransferNotificationEvent(String accountId) {
+		this.accountId = accountId;
+	}
+}
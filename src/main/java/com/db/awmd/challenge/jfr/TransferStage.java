@@ -0,0 +1,14 @@
+package com.db.awmd.challenge.jfr;
+
+import java.math.BigDecimal;
+
+/**
+ * A transfer stage being timed, started by {@link TransferStages}.
+ */
+public interface TransferStage {
+
+	/**
+	 * Ends the stage and records it if its event is enabled and the stage took longer than the event's threshold.
+	 */
+	void finish(String fromAccountId, String toAccountId, BigDecimal amount);
+}
@@ -0,0 +1,39 @@
+package com.db.awmd.challenge.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+import java.math.BigDecimal;
+
+/**
+ * Base of the Flight Recorder events timing the stages of a transfer. Stage events carry the accounts and the amount
+ * of the transfer they belong to and are thresholded, so a continuous recording only keeps the slow ones.
+ * <p>
+ * Created and begun by {@link JfrTransferStages}. The fields are only filled in when the event is going to be
+ * recorded, which keeps the cost of a fast stage down to a couple of time stamps.
+ */
+@Category({"Accounts", "Transfer"})
+public abstract class TransferStageEvent extends Event implements TransferStage {
+
+	//not private, Flight Recorder skips private fields inherited from a superclass of the event class
+	@Label("From Account Id")
+	protected String fromAccountId;
+
+	@Label("To Account Id")
+	protected String toAccountId;
+
+	@Label("Amount")
+	protected String amount;
+
+	@Override
+	public void finish(String fromAccountId, String toAccountId, BigDecimal amount) {
+		end();
+		if (shouldCommit()) {
+			this.fromAccountId = fromAccountId;
+			this.toAccountId = toAccountId;
+			this.amount = amount == null ? null : amount.toPlainString();
+			commit();
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package com.db.awmd.challenge.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("com.db.awmd.challenge.TransferValidation")
+@Label("Transfer Validation")
+@Description("Validation of the transfer request")
+@Threshold("1 ms")
+public class TransferValidationEvent extends TransferStageEvent {
+}
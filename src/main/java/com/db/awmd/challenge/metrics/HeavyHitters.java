@@ -0,0 +1,193 @@
+package com.db.awmd.challenge.metrics;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Approximate top-K of the most frequent keys over a sliding window. Counts live in one count-min sketch per window
+ * slot (the window slides a slot at a time); keys whose count in the current slot reaches the admission threshold are
+ * kept as heavy hitter candidates, which are ranked by their estimate over the whole window on demand.
+ * <p>
+ * Recording is lock-free and costs {@value #DEPTH} atomic increments plus a map lookup, so it can stay on all the time.
+ * Like any count-min sketch the counts can only be over-estimated, and increments racing with the reset of a slot may
+ * be lost.
+ */
+public class HeavyHitters {
+
+	private static final int DEPTH = 4;
+	private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+	private final int width;
+	private final int capacity;
+	private final long slotMillis;
+	private final AtomicIntegerArray[] slots;
+	private final AtomicLong[] slotEpochs;
+	private final ConcurrentMap<String, Boolean> candidates = new ConcurrentHashMap<>();
+	private final ReentrantLock pruneLock = new ReentrantLock();
+	private volatile int admissionThreshold = 1;
+
+	/**
+	 * @param width counters per sketch row, rounded up to a power of two
+	 * @param capacity number of heavy hitters to track
+	 * @param windowMillis length of the sliding window
+	 * @param slots number of slots the window is split into
+	 */
+	public HeavyHitters(int width, int capacity, long windowMillis, int slots) {
+		this.width = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+		this.capacity = capacity;
+		this.slotMillis = Math.max(1, windowMillis / slots);
+		this.slots = new AtomicIntegerArray[slots];
+		this.slotEpochs = new AtomicLong[slots];
+		for (int i = 0; i < slots; i++) {
+			this.slots[i] = new AtomicIntegerArray(DEPTH * this.width);
+			this.slotEpochs[i] = new AtomicLong(-1);
+		}
+	}
+
+	public void record(String key) {
+		record(key, System.currentTimeMillis());
+	}
+
+	void record(String key, long nowMillis) {
+		AtomicIntegerArray sketch = currentSlot(nowMillis);
+		int hash = key.hashCode();
+		int estimate = Integer.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			estimate = Math.min(estimate, sketch.incrementAndGet(index(hash, row)));
+		}
+		// candidates is only pruned once it doubled, so pruning runs at most once per capacity admissions
+		if (estimate >= admissionThreshold && !candidates.containsKey(key)) {
+			candidates.put(key, Boolean.TRUE);
+			if (candidates.size() > 2 * capacity) {
+				prune(nowMillis);
+			}
+		}
+	}
+
+	/**
+	 * @return estimated count of the key over the window
+	 */
+	public long estimate(String key) {
+		return estimate(key, System.currentTimeMillis());
+	}
+
+	long estimate(String key, long nowMillis) {
+		int hash = key.hashCode();
+		long epoch = nowMillis / slotMillis;
+		long total = 0;
+		for (int slot = 0; slot < slots.length; slot++) {
+			if (slotEpochs[slot].get() <= epoch - slots.length) {
+				continue;
+			}
+			int estimate = Integer.MAX_VALUE;
+			for (int row = 0; row < DEPTH; row++) {
+				estimate = Math.min(estimate, slots[slot].get(index(hash, row)));
+			}
+			total += estimate;
+		}
+		return total;
+	}
+
+	/**
+	 * @return up to {@code limit} keys with their estimated counts over the window, most frequent first
+	 */
+	public Map<String, Long> top(int limit) {
+		long now = System.currentTimeMillis();
+		List<Map.Entry<String, Long>> ranked = rank(now);
+		Map<String, Long> top = new LinkedHashMap<>();
+		for (Map.Entry<String, Long> entry : ranked) {
+			if (top.size() >= limit) {
+				break;
+			}
+			top.put(entry.getKey(), entry.getValue());
+		}
+		return top;
+	}
+
+	public void clear() {
+		for (int slot = 0; slot < slots.length; slot++) {
+			slotEpochs[slot].set(-1);
+			resetSlot(slot);
+		}
+		candidates.clear();
+		admissionThreshold = 1;
+	}
+
+	private List<Map.Entry<String, Long>> rank(long nowMillis) {
+		List<Map.Entry<String, Long>> ranked = new ArrayList<>();
+		for (String key : candidates.keySet()) {
+			long estimate = estimate(key, nowMillis);
+			if (estimate > 0) {
+				ranked.add(new AbstractMap.SimpleImmutableEntry<>(key, estimate));
+			}
+		}
+		ranked.sort(Comparator.comparing(Map.Entry<String, Long>::getValue).reversed());
+		return ranked;
+	}
+
+	/**
+	 * Drops the candidates that fell out of the top and raises the bar for new ones to the per-slot count of the weakest
+	 * remaining heavy hitter, but at least 2 once the top is full.
+	 */
+	private void prune(long nowMillis) {
+		if (!pruneLock.tryLock()) {
+			return;
+		}
+		try {
+			List<Map.Entry<String, Long>> ranked = rank(nowMillis);
+			for (int i = capacity; i < ranked.size(); i++) {
+				candidates.remove(ranked.get(i).getKey());
+			}
+			for (String key : candidates.keySet()) {
+				if (estimate(key, nowMillis) == 0) {
+					candidates.remove(key);
+				}
+			}
+			if (ranked.size() >= capacity) {
+				// once full, a key seen only once in a slot never makes it in, so uniform traffic does not churn candidates
+				long weakest = ranked.get(capacity - 1).getValue();
+				admissionThreshold = (int) Math.max(2, Math.min(Integer.MAX_VALUE, weakest / slots.length));
+			} else {
+				admissionThreshold = 1;
+			}
+		} finally {
+			pruneLock.unlock();
+		}
+	}
+
+	private AtomicIntegerArray currentSlot(long nowMillis) {
+		long epoch = nowMillis / slotMillis;
+		int slot = (int) (epoch % slots.length);
+		AtomicLong slotEpoch = slotEpochs[slot];
+		long seen = slotEpoch.get();
+		if (seen < epoch && slotEpoch.compareAndSet(seen, epoch)) {
+			// first one into a new slot wipes the counts it held one window ago
+			resetSlot(slot);
+		}
+		return slots[slot];
+	}
+
+	private void resetSlot(int slot) {
+		AtomicIntegerArray sketch = slots[slot];
+		for (int i = 0; i < sketch.length(); i++) {
+			sketch.set(i, 0);
+		}
+	}
+
+	private int index(int hash, int row) {
+		int h = (hash ^ SEEDS[row]) * 0x9E3779B1;
+		h ^= h >>> 15;
+		h *= 0x85EBCA77;
+		h ^= h >>> 13;
+		return row * width + (h & (width - 1));
+	}
+}
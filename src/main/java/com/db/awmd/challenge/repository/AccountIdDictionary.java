@@ -0,0 +1,142 @@
+package com.db.awmd.challenge.repository;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Maps external account ids to dense int handles (0, 1, 2, ... in registration order) and back. Handles are not
+ * reused unless the dictionary is cleared, so repositories can index accounts by handle in plain arrays and transfers
+ * can order locks by comparing ints; the string id is only needed where a request enters.
+ * <p>
+ * Ids live in an open-addressing table (an id reference and an int per slot, no per-entry objects) that is read
+ * without locking. Registration is synchronized and publishes each slot's handle before its id; a resize builds a new
+ * table and swaps it in, so a lookup that misses while racing with a resize retries on the new table. Misses never
+ * lock.
+ */
+public class AccountIdDictionary {
+
+  public static final int NONE = -1;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private volatile Table table = new Table(INITIAL_CAPACITY);
+
+  private volatile String[] ids = new String[INITIAL_CAPACITY];
+
+  private int size;
+
+  /**
+   * @return the handle of the id, {@link #NONE} if it was never registered
+   */
+  public int handleOf(String accountId) {
+    Table current = table;
+    while (true) {
+      int handle = current.get(accountId);
+      Table latest = table;
+      if (handle != NONE || latest == current) {
+        return handle;
+      }
+      // resized meanwhile, the id may have been registered into the new table only
+      current = latest;
+    }
+  }
+
+  /**
+   * @return the handle of the id, newly assigned if the id is not registered yet
+   */
+  public synchronized int register(String accountId) {
+    int handle = table.get(accountId);
+    if (handle != NONE) {
+      return handle;
+    }
+    handle = size++;
+    String[] current = ids;
+    if (handle == current.length) {
+      current = Arrays.copyOf(current, current.length * 2);
+    }
+    current[handle] = accountId;
+    ids = current;
+    if (2 * (table.count + 1) > table.capacity()) {
+      Table resized = new Table(table.capacity() * 2);
+      table.copyTo(resized);
+      table = resized;
+    }
+    table.put(accountId, handle);
+    return handle;
+  }
+
+  /**
+   * @return the id registered under the handle
+   */
+  public String idOf(int handle) {
+    String[] current = ids;
+    return handle >= 0 && handle < current.length ? current[handle] : null;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  public synchronized void clear() {
+    table = new Table(INITIAL_CAPACITY);
+    ids = new String[INITIAL_CAPACITY];
+    size = 0;
+  }
+
+  private static final class Table {
+
+    private final AtomicReferenceArray<String> keys;
+    private final int[] handles;
+    private final int mask;
+    private int count;
+
+    Table(int capacity) {
+      this.keys = new AtomicReferenceArray<>(capacity);
+      this.handles = new int[capacity];
+      this.mask = capacity - 1;
+    }
+
+    int capacity() {
+      return mask + 1;
+    }
+
+    int get(String accountId) {
+      int slot = spread(accountId.hashCode()) & mask;
+      while (true) {
+        String key = keys.get(slot);
+        if (key == null) {
+          return NONE;
+        }
+        if (key.equals(accountId)) {
+          return handles[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+
+    void put(String accountId, int handle) {
+      int slot = spread(accountId.hashCode()) & mask;
+      while (keys.get(slot) != null) {
+        slot = (slot + 1) & mask;
+      }
+      // the handle is written before the key is published, a reader that finds the key also sees its handle
+      handles[slot] = handle;
+      keys.set(slot, accountId);
+      count++;
+    }
+
+    void copyTo(Table other) {
+      for (int slot = 0; slot <= mask; slot++) {
+        String key = keys.get(slot);
+        if (key != null) {
+          other.put(key, handles[slot]);
+        }
+      }
+    }
+
+    private static int spread(int hash) {
+      hash *= 0x9E3779B9;
+      return hash ^ (hash >>> 16);
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package com.db.awmd.challenge.repository;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Durable key-value store of account balances, used underneath a caching repository.
+ */
+public interface AccountStore {
+
+  /**
+   * @return the stored balance, null if the account does not exist
+   */
+  BigDecimal load(String accountId);
+
+  boolean contains(String accountId);
+
+  /**
+   * @return the ids of all stored accounts
+   */
+  Set<String> accountIds();
+
+  /**
+   * Writes all balances of the batch at once: after a crash either all of them are stored or none.
+   */
+  void writeBatch(Map<String, BigDecimal> balances);
+
+  void clear();
+
+  void close();
+}
@@ -2,6 +2,7 @@ package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.util.Map;
 
 public interface AccountsRepository {
 
@@ -9,5 +10,46 @@ public interface AccountsRepository {
 
   Account getAccount(String accountId);
 
+  /**
+   * @param handle handle of an account returned by {@link #getAccount(String)}
+   * @return the account instance currently held for the handle, null if there is none
+   */
+  Account getAccount(int handle);
+
+  /**
+   * Like {@link #getAccount(int)}, but also covers an account the repository only keeps in a backing store or cold
+   * tier, either by bringing it in or as a detached copy of what is stored.
+   */
+  Account loadAccount(int handle);
+
+  /**
+   * @return sizes of the tiers the accounts are kept in, and how accounts move between them
+   */
+  Map<String, Object> getTierStats();
+
+  /**
+   * @return one more than the greatest handle assigned so far, handles are dense from 0
+   */
+  int getHandleLimit();
+
+  /**
+   * Records a balance change made on an account returned by {@link #getAccount(String)}. Called while holding the
+   * account's monitor.
+   */
+  void updateAccount(Account account);
+
+  /**
+   * Brackets a change of the balances of one or more accounts: called holding their monitors, before the first balance
+   * is changed, and {@link #endChange} after the last {@link #updateAccount}. A repository persisting balances uses it
+   * to read a consistent cut of them without taking the account monitors.
+   * @return token to hand back to {@link #endChange}
+   */
+  default int beginChange() {
+    return 0;
+  }
+
+  default void endChange(int token) {
+  }
+
   void clearAccounts();
 }
@@ -2,32 +2,441 @@ package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+/**
+ * Accounts in an array indexed by their {@link AccountIdDictionary} handle. Lookups are lock-free; creation is
+ * synchronized and grows the array by copying. Slots only change holding this repository's lock, which growing holds
+ * too, so no change is lost to a copy.
+ * <p>
+ * With tiering enabled, accounts nobody looked up for a while are moved out of the heap: a periodic sweep writes them
+ * to a {@link ColdSegment} and clears their slot, and the next lookup by id promotes the account back into a new
+ * instance. Lookups of hot accounts only add a check of their access epoch, which is written once per sweep interval.
+ * Accounts with held funds stay hot. A demoted instance is discarded like one evicted by a cache, so callers holding
+ * its monitor re-check it against {@link #getAccount(int)}.
+ */
 @Repository
+@Slf4j
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
-  private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+  // segments with fewer live entries than this share are rewritten with the next sweep
+  private static final double COMPACTION_THRESHOLD = 0.5;
+
+  private final AccountIdDictionary dictionary = new AccountIdDictionary();
+
+  private volatile AtomicReferenceArray<Account> accounts = new AtomicReferenceArray<>(1024);
+
+  private final boolean tiered;
+  private final int dormantEpochs;
+  private final Path coldDirectory;
+  private final ScheduledExecutorService sweeper;
+  private final Object sweepLock = new Object();
+
+  // sweeps so far, the access epoch lookups stamp accounts with
+  private volatile int epoch;
+  // per handle, the epoch of the latest lookup; racy by design, a lost stamp at most demotes an account early
+  private volatile int[] accessEpochs = new int[1024];
+  // per handle, the id of the cold segment holding the account, 0 if none; written holding this
+  private volatile AtomicIntegerArray coldSegmentIds = new AtomicIntegerArray(1024);
+  private final ConcurrentMap<Integer, ColdSegment> segments = new ConcurrentHashMap<>();
+  private int nextSegmentId = 1;
+  private int hotCount;
+  private int coldCount;
+
+  private final LatencyHistogram promotionMicros = new LatencyHistogram();
+  private final LongAdder promotions = new LongAdder();
+  private final LongAdder demotions = new LongAdder();
+  private volatile long lastSweepMillis;
+
+  /**
+   * Keeps every account on the heap.
+   */
+  public AccountsRepositoryInMemory() {
+    this(false, 0, 1, "");
+  }
+
+  /**
+   * @param dormantAfterSeconds accounts not looked up for this long are moved to cold segments
+   * @param sweepIntervalSeconds how often dormant accounts are looked for, also the granularity of their access age
+   * @param coldDirectory where cold segments are written, a new temporary directory if empty
+   */
+  @Autowired
+  public AccountsRepositoryInMemory(@Value("${accounts.tiering.enabled:false}") boolean tiered,
+    @Value("${accounts.tiering.dormant-after-seconds:2592000}") long dormantAfterSeconds,
+    @Value("${accounts.tiering.sweep-interval-seconds:3600}") long sweepIntervalSeconds,
+    @Value("${accounts.tiering.directory:}") String coldDirectory) {
+    this.tiered = tiered;
+    this.dormantEpochs = (int) Math.max(1, (dormantAfterSeconds + sweepIntervalSeconds - 1) / sweepIntervalSeconds);
+    if (!tiered) {
+      this.coldDirectory = null;
+      this.sweeper = null;
+      return;
+    }
+    try {
+      this.coldDirectory = coldDirectory.isEmpty() ? Files.createTempDirectory("accounts-cold")
+        : Files.createDirectories(Paths.get(coldDirectory));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not create cold account directory " + coldDirectory, e);
+    }
+    this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "accounts-tiering");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.sweeper.scheduleWithFixedDelay(this::sweepSafely, sweepIntervalSeconds, sweepIntervalSeconds,
+      TimeUnit.SECONDS);
+  }
 
   @Override
-  public void createAccount(Account account) throws DuplicateAccountIdException {
-    Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
-    if (previousAccount != null) {
+  public synchronized void createAccount(Account account) throws DuplicateAccountIdException {
+    int handle = dictionary.handleOf(account.getAccountId());
+    if (handle != AccountIdDictionary.NONE
+      && (getAccount(handle) != null || coldSegmentIds.get(handle) != 0)) {
       throw new DuplicateAccountIdException(
         "Account id " + account.getAccountId() + " already exists!");
     }
+    handle = dictionary.register(account.getAccountId());
+    account.setHandle(handle);
+    AtomicReferenceArray<Account> current = accounts;
+    if (handle >= current.length()) {
+      int length = Math.max(handle + 1, current.length() * 2);
+      AtomicReferenceArray<Account> grown = new AtomicReferenceArray<>(length);
+      AtomicIntegerArray grownColdIds = new AtomicIntegerArray(length);
+      for (int i = 0; i < current.length(); i++) {
+        grown.set(i, current.get(i));
+        grownColdIds.set(i, coldSegmentIds.get(i));
+      }
+      accessEpochs = Arrays.copyOf(accessEpochs, length);
+      coldSegmentIds = grownColdIds;
+      current = grown;
+      accounts = grown;
+    }
+    accessEpochs[handle] = epoch;
+    current.set(handle, account);
+    hotCount++;
   }
 
   @Override
   public Account getAccount(String accountId) {
-    return accounts.get(accountId);
+    int handle = dictionary.handleOf(accountId);
+    if (handle == AccountIdDictionary.NONE) {
+      return null;
+    }
+    Account account = getAccount(handle);
+    if (account == null) {
+      return tiered ? promote(handle) : null;
+    }
+    if (tiered) {
+      int[] epochs = accessEpochs;
+      int current = epoch;
+      if (handle < epochs.length && epochs[handle] != current) {
+        epochs[handle] = current;
+      }
+    }
+    return account;
+  }
+
+  @Override
+  public Account getAccount(int handle) {
+    AtomicReferenceArray<Account> current = accounts;
+    return handle >= 0 && handle < current.length() ? current.get(handle) : null;
+  }
+
+  /**
+   * Dormant accounts are read from their cold segment into a detached instance, they stay cold.
+   */
+  @Override
+  public Account loadAccount(int handle) {
+    while (true) {
+      Account account = getAccount(handle);
+      if (account != null || !tiered) {
+        return account;
+      }
+      AtomicIntegerArray coldIds = coldSegmentIds;
+      int segmentId = handle >= 0 && handle < coldIds.length() ? coldIds.get(handle) : 0;
+      if (segmentId == 0) {
+        // promoted meanwhile, or demoted into a grown table this read missed
+        if (getAccount(handle) == null && coldIds == coldSegmentIds) {
+          return null;
+        }
+        continue;
+      }
+      ColdSegment segment = segments.get(segmentId);
+      BigDecimal balance = segment == null ? null : segment.read(handle);
+      if (balance != null) {
+        Account detached = new Account(dictionary.idOf(handle), balance);
+        detached.setHandle(handle);
+        return detached;
+      }
+    }
+  }
+
+  @Override
+  public int getHandleLimit() {
+    return dictionary.size();
+  }
+
+  @Override
+  public void updateAccount(Account account) {
+    // the array holds the account itself, nothing to write back
+  }
+
+  @Override
+  public synchronized void clearAccounts() {
+    accounts = new AtomicReferenceArray<>(1024);
+    accessEpochs = new int[1024];
+    coldSegmentIds = new AtomicIntegerArray(1024);
+    for (ColdSegment segment : segments.values()) {
+      segment.delete();
+    }
+    segments.clear();
+    hotCount = 0;
+    coldCount = 0;
+    dictionary.clear();
   }
 
   @Override
-  public void clearAccounts() {
-    accounts.clear();
+  public Map<String, Object> getTierStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("tiered", tiered);
+    synchronized (this) {
+      stats.put("hotAccounts", hotCount);
+      stats.put("coldAccounts", coldCount);
+      stats.put("coldSegments", segments.size());
+      long coldBytes = 0;
+      for (ColdSegment segment : segments.values()) {
+        coldBytes += segment.getByteSize();
+      }
+      stats.put("coldBytes", coldBytes);
+    }
+    stats.put("promotions", promotions.sum());
+    stats.put("demotions", demotions.sum());
+    stats.put("promotionMicros", promotionMicros.summary());
+    stats.put("lastSweepMillis", lastSweepMillis);
+    return stats;
+  }
+
+  /**
+   * Moves the accounts not looked up for the dormant period to a new cold segment, together with what is left in
+   * segments that lost most of their entries to promotions. Does nothing with tiering disabled.
+   */
+  public void sweep() {
+    if (!tiered) {
+      return;
+    }
+    synchronized (sweepLock) {
+      demoteDormant();
+    }
+  }
+
+  @PreDestroy
+  public void close() throws InterruptedException {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+      sweeper.awaitTermination(10, TimeUnit.SECONDS);
+      synchronized (this) {
+        for (ColdSegment segment : segments.values()) {
+          segment.delete();
+        }
+      }
+    }
   }
 
+  private void demoteDormant() {
+    long started = System.nanoTime();
+    int current = epoch;
+    // accounts stamped with this epoch or earlier were not looked up for the last dormantEpochs intervals
+    int dormantBefore = current - dormantEpochs;
+    epoch = current + 1;
+    AtomicReferenceArray<Account> hot = accounts;
+    int[] epochs = accessEpochs;
+    int limit = Math.min(hot.length(), epochs.length);
+
+    List<Account> candidates = new ArrayList<>();
+    List<BigDecimal> candidateBalances = new ArrayList<>();
+    for (int handle = 0; handle < limit; handle++) {
+      Account account = hot.get(handle);
+      if (account != null && epochs[handle] <= dormantBefore) {
+        synchronized (account) {
+          if (account.getHeldBalance().signum() == 0) {
+            candidates.add(account);
+            candidateBalances.add(account.getBalance());
+          }
+        }
+      }
+    }
+    List<ColdSegment> compacted = new ArrayList<>();
+    for (ColdSegment segment : segments.values()) {
+      synchronized (this) {
+        if (segment.getLive() < segment.getSize() * COMPACTION_THRESHOLD) {
+          compacted.add(segment);
+        }
+      }
+    }
+    if (candidates.isEmpty() && compacted.isEmpty()) {
+      lastSweepMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+      return;
+    }
+
+    // entries sorted by handle: candidates as positive indexes, entries of compacted segments as negative ones
+    List<BigDecimal> movedBalances = new ArrayList<>();
+    List<Integer> movedFrom = new ArrayList<>();
+    List<long[]> order = new ArrayList<>();
+    for (int i = 0; i < candidates.size(); i++) {
+      order.add(new long[] {candidates.get(i).getHandle(), i});
+    }
+    for (ColdSegment segment : compacted) {
+      segment.forEach((handle, balance) -> {
+        if (coldSegmentIdOf(handle) == segment.getId()) {
+          order.add(new long[] {handle, -1 - movedBalances.size()});
+          movedBalances.add(balance);
+          movedFrom.add(segment.getId());
+        }
+      });
+    }
+    order.sort((a, b) -> Long.compare(a[0], b[0]));
+    int[] handles = new int[order.size()];
+    BigDecimal[] balances = new BigDecimal[order.size()];
+    for (int i = 0; i < handles.length; i++) {
+      long[] entry = order.get(i);
+      handles[i] = (int) entry[0];
+      balances[i] = entry[1] >= 0 ? candidateBalances.get((int) entry[1]) : movedBalances.get((int) (-1 - entry[1]));
+    }
+
+    int segmentId;
+    synchronized (this) {
+      segmentId = nextSegmentId++;
+    }
+    ColdSegment segment = handles.length == 0 ? null
+      : ColdSegment.write(segmentId, coldDirectory, handles, balances, handles.length);
+    if (segment != null) {
+      // live starts at 0 and counts each entry as it is handed over, so promotions out of it can come at any time
+      segments.put(segmentId, segment);
+    }
+    int demoted = 0;
+    for (long[] entry : order) {
+      int handle = (int) entry[0];
+      if (entry[1] >= 0) {
+        Account account = candidates.get((int) entry[1]);
+        BigDecimal balance = candidateBalances.get((int) entry[1]);
+        // the balance instance tells whether the account changed since it was written
+        synchronized (account) {
+          synchronized (this) {
+            if (accounts.get(handle) == account && account.getBalance() == balance
+              && account.getHeldBalance().signum() == 0 && accessEpochs[handle] <= dormantBefore) {
+              coldSegmentIds.set(handle, segmentId);
+              accounts.set(handle, null);
+              segment.setLive(segment.getLive() + 1);
+              hotCount--;
+              coldCount++;
+              demoted++;
+            }
+          }
+        }
+      } else {
+        int from = movedFrom.get((int) (-1 - entry[1]));
+        synchronized (this) {
+          if (coldSegmentIds.get(handle) == from) {
+            coldSegmentIds.set(handle, segmentId);
+            segment.setLive(segment.getLive() + 1);
+          }
+        }
+      }
+    }
+    int hotAccounts;
+    int coldAccounts;
+    synchronized (this) {
+      for (ColdSegment old : compacted) {
+        segments.remove(old.getId());
+        old.delete();
+      }
+      if (segment != null && segment.getLive() == 0) {
+        segments.remove(segmentId);
+        segment.delete();
+      }
+      hotAccounts = hotCount;
+      coldAccounts = coldCount;
+    }
+    demotions.add(demoted);
+    lastSweepMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    log.info("Moved {} dormant accounts to cold storage in {} ms, {} hot and {} cold accounts", demoted,
+      lastSweepMillis, hotAccounts, coldAccounts);
+  }
+
+  private void sweepSafely() {
+    try {
+      sweep();
+    } catch (RuntimeException e) {
+      // keep the periodic task alive, accounts that could not be moved stay hot
+      log.error("Moving dormant accounts to cold storage failed", e);
+    }
+  }
+
+  private int coldSegmentIdOf(int handle) {
+    AtomicIntegerArray coldIds = coldSegmentIds;
+    return handle < coldIds.length() ? coldIds.get(handle) : 0;
+  }
+
+  /**
+   * Brings a dormant account back into a new hot instance.
+   * @return null if there is no account with the handle
+   */
+  private Account promote(int handle) {
+    long started = System.nanoTime();
+    Account account;
+    while (true) {
+      // inflating the block is the slow part, done before locking and only used if the account did not move meanwhile
+      int segmentId = coldSegmentIdOf(handle);
+      ColdSegment segment = segmentId == 0 ? null : segments.get(segmentId);
+      BigDecimal balance = segment == null ? null : segment.read(handle);
+      synchronized (this) {
+        account = getAccount(handle);
+        if (account != null) {
+          return account;
+        }
+        if (coldSegmentIdOf(handle) != segmentId) {
+          continue;
+        }
+        if (segment == null) {
+          return null;
+        }
+        account = new Account(dictionary.idOf(handle), balance);
+        account.setHandle(handle);
+        accessEpochs[handle] = epoch;
+        accounts.set(handle, account);
+        coldSegmentIds.set(handle, 0);
+        segment.setLive(segment.getLive() - 1);
+        hotCount++;
+        coldCount--;
+        break;
+      }
+    }
+    promotions.increment();
+    promotionMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+    return account;
+  }
 }
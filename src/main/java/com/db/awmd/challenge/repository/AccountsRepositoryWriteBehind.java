@@ -0,0 +1,437 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository keeping the hot working set of accounts in memory on top of an {@link AccountStore} holding all of them.
+ * Enabled by setting {@code accounts.store.path}.
+ * <p>
+ * Balance changes only mark the account dirty; a single maintenance thread writes dirty balances to the store in
+ * coalesced batches (on an interval, as soon as enough accounts are dirty, and on shutdown) and evicts clean accounts
+ * once the cache grows past its bound. Every batch is a consistent cut: changes hold one stripe of a striped
+ * read-write gate (see {@link #beginChange()}) and the balances of a batch are read holding all stripes, so the debit
+ * and the credit of a transfer are stored together or not at all. Victims are chosen TinyLFU style: a small frequency sketch with periodic aging
+ * estimates how often each account is read, and the least frequent of a few sampled accounts is evicted. There is no
+ * admission filter, because account instances double as transfer monitors and must stay canonical while in use.
+ * <p>
+ * Eviction happens under the account's monitor, so an account cannot be evicted halfway through a transfer; a transfer
+ * that locked an instance evicted just before must check it is still the cached one (see
+ * {@link com.db.awmd.challenge.service.TransactionService}). Accounts with open holds are never evicted, the store
+ * only has their total balance (see {@link com.db.awmd.challenge.service.HoldService}).
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(prefix = "accounts.store", name = "path")
+@Slf4j
+public class AccountsRepositoryWriteBehind implements AccountsRepository {
+
+  private static final int EVICTION_SAMPLE = 8;
+
+  private final AccountStore store;
+  private final int maxSize;
+  private final int flushBatchSize;
+  private final ConcurrentMap<String, Account> cache = new ConcurrentHashMap<>();
+  // store reads in progress, by account id
+  private final ConcurrentMap<String, CompletableFuture<Account>> loads = new ConcurrentHashMap<>();
+  // handles stay stable across eviction and reload, so a reloaded instance keeps its place in the lock order
+  private final AccountIdDictionary dictionary = new AccountIdDictionary();
+  private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+  private final FrequencySketch frequencies;
+  private final ScheduledExecutorService maintenance;
+  private final AtomicBoolean maintenanceRequested = new AtomicBoolean();
+  // a balance change holds one stripe shared, a flush holds all of them to read balances without the monitors
+  private final ReadWriteLock[] changeGates;
+  private Iterator<Account> evictionCursor;
+
+  @Autowired
+  public AccountsRepositoryWriteBehind(@Value("${accounts.store.path}") String path,
+    @Value("${accounts.store.fsync:false}") boolean fsync,
+    @Value("${accounts.store.cache-size:100000}") int maxSize,
+    @Value("${accounts.store.flush-interval-ms:200}") long flushIntervalMillis,
+    @Value("${accounts.store.flush-batch-size:10000}") int flushBatchSize) {
+    this(new FileAccountStore(Paths.get(path), fsync), maxSize, flushIntervalMillis, flushBatchSize);
+  }
+
+  public AccountsRepositoryWriteBehind(AccountStore store, int maxSize, long flushIntervalMillis,
+    int flushBatchSize) {
+    this.store = store;
+    this.maxSize = maxSize;
+    this.flushBatchSize = flushBatchSize;
+    this.frequencies = new FrequencySketch(maxSize);
+    this.changeGates = new ReadWriteLock[Integer.highestOneBit(
+      Math.max(1, 2 * Runtime.getRuntime().availableProcessors() - 1)) << 1];
+    for (int i = 0; i < changeGates.length; i++) {
+      changeGates[i] = new ReentrantReadWriteLock();
+    }
+    // every stored account gets its handle up front, so handles 0 until getHandleLimit() cover all accounts
+    for (String accountId : store.accountIds()) {
+      dictionary.register(accountId);
+    }
+    this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "accounts-write-behind");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.maintenance.scheduleWithFixedDelay(this::maintain, flushIntervalMillis, flushIntervalMillis,
+      TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    // set before the account is visible, transfers order their locks by it
+    account.setHandle(dictionary.register(account.getAccountId()));
+    // eviction re-checks under the monitor, so the account cannot be evicted before it is marked dirty
+    synchronized (account) {
+      if (store.contains(account.getAccountId())
+        || cache.putIfAbsent(account.getAccountId(), account) != null) {
+        throw new DuplicateAccountIdException(
+          "Account id " + account.getAccountId() + " already exists!");
+      }
+      markDirty(account.getAccountId());
+    }
+  }
+
+  @Override
+  public Account getAccount(String accountId) {
+    frequencies.increment(accountId);
+    Account account = cache.get(accountId);
+    return account != null ? account : load(accountId);
+  }
+
+  @Override
+  public Account getAccount(int handle) {
+    String accountId = dictionary.idOf(handle);
+    return accountId == null ? null : cache.get(accountId);
+  }
+
+  /**
+   * Accounts not cached are read from the store into a detached copy, so a walk over all accounts leaves the cache and
+   * its frequencies alone. Uncached accounts have no open holds, the stored balance is all of their money.
+   */
+  @Override
+  public Account loadAccount(int handle) {
+    String accountId = dictionary.idOf(handle);
+    if (accountId == null) {
+      return null;
+    }
+    Account account = cache.get(accountId);
+    if (account != null) {
+      return account;
+    }
+    BigDecimal balance = store.load(accountId);
+    if (balance == null) {
+      // created after the lookup above, not written yet
+      return cache.get(accountId);
+    }
+    Account detached = new Account(accountId, balance);
+    detached.setHandle(handle);
+    return detached;
+  }
+
+  @Override
+  public int getHandleLimit() {
+    return dictionary.size();
+  }
+
+  @Override
+  public void updateAccount(Account account) {
+    markDirty(account.getAccountId());
+  }
+
+  @Override
+  public int beginChange() {
+    long id = Thread.currentThread().getId();
+    int stripe = (int) (id ^ (id >>> 16)) & (changeGates.length - 1);
+    changeGates[stripe].readLock().lock();
+    return stripe;
+  }
+
+  @Override
+  public void endChange(int token) {
+    changeGates[token].readLock().unlock();
+  }
+
+  @Override
+  public void clearAccounts() {
+    synchronized (this) {
+      cache.clear();
+      dirty.clear();
+      evictionCursor = null;
+      store.clear();
+      dictionary.clear();
+    }
+  }
+
+  @Override
+  public Map<String, Object> getTierStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("tiered", true);
+    stats.put("hotAccounts", cache.size());
+    stats.put("dirtyAccounts", dirty.size());
+    stats.put("accounts", dictionary.size());
+    stats.put("maxHotAccounts", maxSize);
+    return stats;
+  }
+
+  /**
+   * Writes every dirty balance to the store.
+   */
+  public void flush() {
+    synchronized (this) {
+      flushDirty();
+    }
+  }
+
+  @PreDestroy
+  public void close() throws InterruptedException {
+    maintenance.shutdown();
+    maintenance.awaitTermination(10, TimeUnit.SECONDS);
+    flush();
+    store.close();
+  }
+
+  public int getCachedCount() {
+    return cache.size();
+  }
+
+  public int getDirtyCount() {
+    return dirty.size();
+  }
+
+  /**
+   * Reads an account from the store into the cache, outside of any lock of the map. One load per account runs at a
+   * time and concurrent lookups wait for it. Once a load is registered and the account found not cached, no other
+   * instance can be cached or evicted meanwhile, so the stored balance is the current one.
+   */
+  private Account load(String accountId) {
+    CompletableFuture<Account> loading = new CompletableFuture<>();
+    CompletableFuture<Account> running = loads.putIfAbsent(accountId, loading);
+    if (running != null) {
+      try {
+        return running.join();
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+      }
+    }
+    try {
+      Account account = cache.get(accountId);
+      if (account == null) {
+        BigDecimal balance = store.load(accountId);
+        if (balance != null) {
+          Account loaded = new Account(accountId, balance);
+          loaded.setHandle(dictionary.register(accountId));
+          account = cache.putIfAbsent(accountId, loaded);
+          if (account == null) {
+            account = loaded;
+          }
+          if (cache.size() > maxSize) {
+            requestMaintenance();
+          }
+        }
+      }
+      loading.complete(account);
+      return account;
+    } catch (RuntimeException e) {
+      loading.completeExceptionally(e);
+      throw e;
+    } finally {
+      loads.remove(accountId, loading);
+    }
+  }
+
+  private void markDirty(String accountId) {
+    dirty.add(accountId);
+    if (dirty.size() >= flushBatchSize) {
+      requestMaintenance();
+    }
+  }
+
+  private void requestMaintenance() {
+    if (maintenanceRequested.compareAndSet(false, true)) {
+      maintenance.execute(this::maintain);
+    }
+  }
+
+  private void maintain() {
+    maintenanceRequested.set(false);
+    try {
+      synchronized (this) {
+        flushDirty();
+        evict();
+      }
+    } catch (RuntimeException e) {
+      // keep the periodic task alive, dirty balances stay marked and are retried on the next run
+      log.error("Account write-behind failed", e);
+    }
+  }
+
+  /**
+   * Writes what is dirty now as one batch. Clean accounts are stored as they are, so with the dirty ones read while no
+   * change is in progress the store holds a state the accounts were in at one point in time.
+   */
+  private void flushDirty() {
+    if (dirty.isEmpty()) {
+      return;
+    }
+    Map<String, BigDecimal> batch = new HashMap<>();
+    for (ReadWriteLock gate : changeGates) {
+      gate.writeLock().lock();
+    }
+    try {
+      for (Iterator<String> ids = dirty.iterator(); ids.hasNext(); ) {
+        String accountId = ids.next();
+        ids.remove();
+        Account account = cache.get(accountId);
+        if (account != null) {
+          // held funds go back to the available balance on reload, open holds do not survive a restart
+          batch.put(accountId, account.getBalance().add(account.getHeldBalance()));
+        }
+      }
+    } finally {
+      for (int i = changeGates.length - 1; i >= 0; i--) {
+        changeGates[i].writeLock().unlock();
+      }
+    }
+    try {
+      store.writeBatch(batch);
+    } catch (RuntimeException e) {
+      dirty.addAll(batch.keySet());
+      throw e;
+    }
+  }
+
+  /**
+   * Evicts clean accounts until the cache is back within its bound. Only ever runs on the maintenance thread, which
+   * holds no account monitor, so waiting for the victim's monitor cannot deadlock with a transfer.
+   */
+  private void evict() {
+    int excess = cache.size() - maxSize;
+    // bounded, in case most of the cache is dirty and the samples keep missing the clean accounts
+    int rounds = excess + cache.size() / EVICTION_SAMPLE;
+    while (excess > 0 && rounds-- > 0) {
+      Account victim = null;
+      int victimFrequency = Integer.MAX_VALUE;
+      for (int sampled = 0; sampled < EVICTION_SAMPLE; sampled++) {
+        if (evictionCursor == null || !evictionCursor.hasNext()) {
+          evictionCursor = cache.values().iterator();
+          if (!evictionCursor.hasNext()) {
+            return;
+          }
+        }
+        Account candidate = evictionCursor.next();
+        int frequency = frequencies.frequency(candidate.getAccountId());
+        if (frequency < victimFrequency && isEvictable(candidate)) {
+          victim = candidate;
+          victimFrequency = frequency;
+        }
+      }
+      if (victim != null) {
+        synchronized (victim) {
+          if (isEvictable(victim) && cache.remove(victim.getAccountId(), victim)) {
+            excess--;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Dirty accounts would lose their balance, and accounts with open holds would come back with the held funds
+   * available.
+   */
+  private boolean isEvictable(Account account) {
+    return !dirty.contains(account.getAccountId()) && account.getHeldBalance().signum() == 0;
+  }
+
+  /**
+   * Count-min sketch of 4-bit-like counters (capped at 15) with aging: once the number of increments reaches ten times
+   * the cache size all counters are halved, so the sketch reflects recent popularity. Updates are not atomic; a lost
+   * increment only makes the estimate a bit lower.
+   */
+  private static final class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+
+    private final byte[] counters;
+    private final int mask;
+    private final int resetAfter;
+    private int additions;
+
+    FrequencySketch(int expectedSize) {
+      int width = Integer.highestOneBit(Math.max(16, expectedSize) - 1) << 1;
+      this.counters = new byte[DEPTH * width];
+      this.mask = width - 1;
+      this.resetAfter = 10 * Math.max(16, expectedSize);
+    }
+
+    void increment(String key) {
+      int hash = spread(key.hashCode());
+      boolean added = false;
+      for (int row = 0; row < DEPTH; row++) {
+        int index = index(hash, row);
+        if (counters[index] < MAX_COUNT) {
+          counters[index]++;
+          added = true;
+        }
+      }
+      if (added && ++additions >= resetAfter) {
+        age();
+      }
+    }
+
+    int frequency(String key) {
+      int hash = spread(key.hashCode());
+      int frequency = MAX_COUNT;
+      for (int row = 0; row < DEPTH; row++) {
+        frequency = Math.min(frequency, counters[index(hash, row)]);
+      }
+      return frequency;
+    }
+
+    private void age() {
+      additions = 0;
+      for (int i = 0; i < counters.length; i++) {
+        counters[i] = (byte) (counters[i] >>> 1);
+      }
+    }
+
+    private int index(int hash, int row) {
+      int h = hash * (0x9E3779B9 + 2 * row + 1);
+      h ^= h >>> 16;
+      return row * (mask + 1) + (h & mask);
+    }
+
+    private static int spread(int hash) {
+      hash ^= hash >>> 17;
+      hash *= 0xED5AD4BB;
+      hash ^= hash >>> 11;
+      return hash;
+    }
+  }
+}
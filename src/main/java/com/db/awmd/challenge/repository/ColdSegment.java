@@ -0,0 +1,210 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Immutable run of dormant account balances, sorted by handle, written once to a file and read through a read-only
+ * memory mapping. Entries are grouped in blocks of {@link #BLOCK_SIZE}, each deflated on its own; a sparse index of
+ * the first handle of every block stays on the heap, so a lookup is a binary search plus inflating one block. The last
+ * block inflated is kept per thread, which makes a walk in handle order inflate every block only once. It refers to
+ * its segment by a key unique within the JVM (ids are only unique within a repository), not by reference, so a thread
+ * that read a deleted segment last does not keep its mapping reachable.
+ * <p>
+ * Entries are never removed; the repository tracks which handles still live in which segment.
+ */
+final class ColdSegment {
+
+  static final int BLOCK_SIZE = 256;
+
+  private static final ThreadLocal<Block> LAST_BLOCK = new ThreadLocal<>();
+
+  private static final AtomicLong KEYS = new AtomicLong();
+
+  private final long key = KEYS.incrementAndGet();
+  private final int id;
+  private final Path path;
+  private final MappedByteBuffer mapped;
+  private final int[] firstHandles;
+  private final int[] blockOffsets;
+  private final int size;
+
+  // handles whose balance is still read from this segment, guarded by the repository
+  private int live;
+
+  private ColdSegment(int id, Path path, MappedByteBuffer mapped, int[] firstHandles, int[] blockOffsets,
+    int size) {
+    this.id = id;
+    this.path = path;
+    this.mapped = mapped;
+    this.firstHandles = firstHandles;
+    this.blockOffsets = blockOffsets;
+    this.size = size;
+  }
+
+  /**
+   * Writes the entries to a new file in the directory and maps it.
+   * @param handles ascending
+   */
+  static ColdSegment write(int id, Path directory, int[] handles, BigDecimal[] balances, int count) {
+    int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    int[] firstHandles = new int[blocks];
+    int[] blockOffsets = new int[blocks + 1];
+    try {
+      Path path = Files.createTempFile(directory, "accounts-cold-", ".seg");
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        int offset = 0;
+        for (int block = 0; block < blocks; block++) {
+          int from = block * BLOCK_SIZE;
+          int to = Math.min(count, from + BLOCK_SIZE);
+          firstHandles[block] = handles[from];
+          blockOffsets[block] = offset;
+          ByteBuffer compressed = ByteBuffer.wrap(deflate(handles, balances, from, to));
+          while (compressed.hasRemaining()) {
+            offset += channel.write(compressed, offset);
+          }
+        }
+        blockOffsets[blocks] = offset;
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, offset);
+        return new ColdSegment(id, path, mapped, firstHandles, blockOffsets, count);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write cold account segment to " + directory, e);
+    }
+  }
+
+  int getId() {
+    return id;
+  }
+
+  int getSize() {
+    return size;
+  }
+
+  int getLive() {
+    return live;
+  }
+
+  void setLive(int live) {
+    this.live = live;
+  }
+
+  long getByteSize() {
+    return blockOffsets[blockOffsets.length - 1];
+  }
+
+  /**
+   * @return the balance stored for the handle, null if the segment has none
+   */
+  BigDecimal read(int handle) {
+    int block = Arrays.binarySearch(firstHandles, handle);
+    if (block < 0) {
+      block = -block - 2;
+      if (block < 0) {
+        return null;
+      }
+    }
+    Block decoded = LAST_BLOCK.get();
+    if (decoded == null || decoded.segmentKey != key || decoded.index != block) {
+      decoded = inflate(block);
+      LAST_BLOCK.set(decoded);
+    }
+    int entry = Arrays.binarySearch(decoded.handles, handle);
+    return entry < 0 ? null : decoded.balances[entry];
+  }
+
+  /**
+   * Hands every entry to the consumer, in handle order.
+   */
+  void forEach(EntryConsumer consumer) {
+    for (int block = 0; block < firstHandles.length; block++) {
+      Block decoded = inflate(block);
+      for (int entry = 0; entry < decoded.handles.length; entry++) {
+        consumer.accept(decoded.handles[entry], decoded.balances[entry]);
+      }
+    }
+  }
+
+  /**
+   * Deletes the file. The mapping stays readable until it is garbage collected, for readers still holding the segment.
+   */
+  void delete() {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      path.toFile().deleteOnExit();
+    }
+  }
+
+  private static byte[] deflate(int[] handles, BigDecimal[] balances, int from, int to) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+      out.writeShort(to - from);
+      for (int i = from; i < to; i++) {
+        byte[] unscaled = balances[i].unscaledValue().toByteArray();
+        out.writeInt(handles[i]);
+        out.writeInt(balances[i].scale());
+        out.writeShort(unscaled.length);
+        out.write(unscaled);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private Block inflate(int block) {
+    byte[] compressed = new byte[blockOffsets[block + 1] - blockOffsets[block]];
+    ByteBuffer view = mapped.duplicate();
+    view.position(blockOffsets[block]);
+    view.get(compressed);
+    try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed)))) {
+      int count = in.readUnsignedShort();
+      int[] handles = new int[count];
+      BigDecimal[] balances = new BigDecimal[count];
+      for (int entry = 0; entry < count; entry++) {
+        handles[entry] = in.readInt();
+        int scale = in.readInt();
+        byte[] unscaled = new byte[in.readUnsignedShort()];
+        in.readFully(unscaled);
+        balances[entry] = new BigDecimal(new BigInteger(unscaled), scale);
+      }
+      return new Block(key, block, handles, balances);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Corrupt cold account segment " + path, e);
+    }
+  }
+
+  interface EntryConsumer {
+    void accept(int handle, BigDecimal balance);
+  }
+
+  private static final class Block {
+
+    private final long segmentKey;
+    private final int index;
+    private final int[] handles;
+    private final BigDecimal[] balances;
+
+    Block(long segmentKey, int index, int[] handles, BigDecimal[] balances) {
+      this.segmentKey = segmentKey;
+      this.index = index;
+      this.handles = handles;
+      this.balances = balances;
+    }
+  }
+}
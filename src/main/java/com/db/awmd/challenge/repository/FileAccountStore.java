@@ -0,0 +1,313 @@
+package com.db.awmd.challenge.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Log-structured account store: every batch appends a frame to a single file and an in-memory index points each
+ * account id at its latest record (keys stay on the heap, balances live on disk). Reads are positional and lock-free,
+ * writes are serialized. Once most of the log is superseded records, the writing thread compacts it into a new file.
+ * <p>
+ * Layout: a magic number, then one frame per batch: payload length (int), the records, CRC-32 of the records (int). A
+ * frame that is cut short or fails its checksum was never acknowledged and is dropped on open, with everything after
+ * it, so a batch is stored entirely or not at all. Record layout: key length (unsigned short), key bytes, value length
+ * (unsigned short), value bytes; both UTF-8, the value being the plain string form of the balance.
+ */
+@Slf4j
+public class FileAccountStore implements AccountStore {
+
+  private static final int MAGIC = 0x41434354;
+  private static final int MAX_FIELD_LENGTH = 0xFFFF;
+  private static final int COMPACTION_SLACK = 1024;
+
+  private final Path path;
+  private final boolean fsync;
+  // replaced as a whole by a compaction, readers that raced with it retry on the new one
+  private volatile Generation generation;
+  // records in the log, guarded by this
+  private long records;
+
+  public FileAccountStore(Path path, boolean fsync) {
+    this.path = path;
+    this.fsync = fsync;
+    try {
+      if (path.getParent() != null) {
+        Files.createDirectories(path.getParent());
+      }
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+      generation = new Generation(channel, new ConcurrentHashMap<>());
+      rebuildIndex();
+      if (isMostlySuperseded()) {
+        compact();
+      }
+      log.info("Opened account store {} with {} accounts", path, generation.index.size());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not open account store " + path, e);
+    }
+  }
+
+  @Override
+  public BigDecimal load(String accountId) {
+    while (true) {
+      Generation current = generation;
+      Long location = current.index.get(accountId);
+      if (location == null) {
+        return null;
+      }
+      ByteBuffer value = ByteBuffer.allocate(length(location));
+      try {
+        readFully(current.channel, value, offset(location));
+      } catch (ClosedChannelException e) {
+        if (current != generation) {
+          // compacted meanwhile
+          continue;
+        }
+        throw new UncheckedIOException("Could not read account " + accountId + " from " + path, e);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not read account " + accountId + " from " + path, e);
+      }
+      return new BigDecimal(new String(value.array(), StandardCharsets.UTF_8));
+    }
+  }
+
+  @Override
+  public boolean contains(String accountId) {
+    return generation.index.containsKey(accountId);
+  }
+
+  @Override
+  public Set<String> accountIds() {
+    return Collections.unmodifiableSet(generation.index.keySet());
+  }
+
+  /**
+   * @throws IllegalArgumentException if an account id or balance is longer than 65535 bytes, nothing is written then
+   */
+  @Override
+  public synchronized void writeBatch(Map<String, BigDecimal> balances) {
+    if (balances.isEmpty()) {
+      return;
+    }
+    Generation current = generation;
+    try {
+      Map<String, Long> locations = new HashMap<>(balances.size() * 2);
+      appendFrame(current.channel, current.channel.size(), balances, locations);
+      if (fsync) {
+        current.channel.force(false);
+      }
+      current.index.putAll(locations);
+      records += locations.size();
+      if (isMostlySuperseded()) {
+        compact();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write accounts to " + path, e);
+    }
+  }
+
+  @Override
+  public synchronized void clear() {
+    Generation current = generation;
+    try {
+      current.channel.truncate(0);
+      writeMagic(current.channel);
+      current.index.clear();
+      records = 0;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not clear account store " + path, e);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      generation.channel.close();
+    } catch (IOException e) {
+      log.warn("Could not close account store {}", path, e);
+    }
+  }
+
+  private void rebuildIndex() throws IOException {
+    FileChannel channel = generation.channel;
+    Map<String, Long> index = generation.index;
+    long size = channel.size();
+    if (size < 4) {
+      // new, or torn before the magic number was written
+      channel.truncate(0);
+      writeMagic(channel);
+      return;
+    }
+    ByteBuffer header = ByteBuffer.allocate(4);
+    readFully(channel, header, 0);
+    if (header.getInt(0) != MAGIC) {
+      throw new IOException(path + " is not an account store");
+    }
+    long position = 4;
+    CRC32 checksum = new CRC32();
+    while (position + 4 <= size) {
+      header.clear();
+      readFully(channel, header, position);
+      int payloadLength = header.getInt(0);
+      if (payloadLength < 0 || position + 4 + payloadLength + 4 > size) {
+        break;
+      }
+      ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+      readFully(channel, payload, position + 4);
+      header.clear();
+      readFully(channel, header, position + 4 + payloadLength);
+      checksum.reset();
+      checksum.update(payload.array());
+      if (header.getInt(0) != (int) checksum.getValue()) {
+        break;
+      }
+      long payloadOffset = position + 4;
+      payload.flip();
+      while (payload.hasRemaining()) {
+        byte[] key = new byte[payload.getShort() & 0xFFFF];
+        payload.get(key);
+        int valueLength = payload.getShort() & 0xFFFF;
+        index.put(new String(key, StandardCharsets.UTF_8), location(payloadOffset + payload.position(), valueLength));
+        payload.position(payload.position() + valueLength);
+        records++;
+      }
+      position += 4 + payloadLength + 4;
+    }
+    if (position < size) {
+      // torn or uncommitted batch at the end of the log, it was never acknowledged
+      log.warn("Dropping {} trailing bytes of account store {}", size - position, path);
+      channel.truncate(position);
+    }
+  }
+
+  private boolean isMostlySuperseded() {
+    return records > 2 * generation.index.size() + COMPACTION_SLACK;
+  }
+
+  /**
+   * Rewrites the live records into a new file and swaps it in. Called holding this, so no batch is written meanwhile;
+   * reads go on against the old file until the swap.
+   */
+  private void compact() throws IOException {
+    Generation current = generation;
+    Map<String, BigDecimal> live = new HashMap<>(current.index.size() * 2);
+    for (String accountId : current.index.keySet()) {
+      live.put(accountId, load(accountId));
+    }
+    Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+    Files.deleteIfExists(compacted);
+    Map<String, Long> locations = new HashMap<>(live.size() * 2);
+    try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      writeMagic(out);
+      appendFrame(out, 4, live, locations);
+      out.force(true);
+    }
+    Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    generation = new Generation(channel, new ConcurrentHashMap<>(locations));
+    log.info("Compacted account store {} from {} to {} records", path, records, locations.size());
+    records = locations.size();
+    current.channel.close();
+  }
+
+  /**
+   * Writes the balances as one frame at the position and puts the location of every value into {@code locations}.
+   */
+  private static void appendFrame(FileChannel channel, long position, Map<String, BigDecimal> balances,
+    Map<String, Long> locations) throws IOException {
+    List<byte[]> fields = new ArrayList<>(balances.size() * 2);
+    List<String> accountIds = new ArrayList<>(balances.size());
+    int payloadLength = 0;
+    for (Map.Entry<String, BigDecimal> entry : balances.entrySet()) {
+      byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+      byte[] value = entry.getValue().toPlainString().getBytes(StandardCharsets.UTF_8);
+      if (key.length > MAX_FIELD_LENGTH || value.length > MAX_FIELD_LENGTH) {
+        throw new IllegalArgumentException("Account " + entry.getKey() + " does not fit into a record, ids and "
+          + "balances are limited to " + MAX_FIELD_LENGTH + " bytes");
+      }
+      fields.add(key);
+      fields.add(value);
+      accountIds.add(entry.getKey());
+      payloadLength += 4 + key.length + value.length;
+    }
+    ByteBuffer frame = ByteBuffer.allocate(4 + payloadLength + 4);
+    frame.putInt(payloadLength);
+    for (int i = 0; i < accountIds.size(); i++) {
+      byte[] key = fields.get(2 * i);
+      byte[] value = fields.get(2 * i + 1);
+      frame.putShort((short) key.length).put(key).putShort((short) value.length);
+      locations.put(accountIds.get(i), location(position + frame.position(), value.length));
+      frame.put(value);
+    }
+    CRC32 checksum = new CRC32();
+    checksum.update(frame.array(), 4, payloadLength);
+    frame.putInt((int) checksum.getValue());
+    frame.flip();
+    long at = position;
+    while (frame.hasRemaining()) {
+      at += channel.write(frame, at);
+    }
+  }
+
+  private static void writeMagic(FileChannel channel) throws IOException {
+    ByteBuffer magic = ByteBuffer.allocate(4).putInt(0, MAGIC);
+    long at = 0;
+    while (magic.hasRemaining()) {
+      at += channel.write(magic, at);
+    }
+  }
+
+  private void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new IOException("Unexpected end of account store " + path);
+      }
+    }
+  }
+
+  private static long location(long valueOffset, int valueLength) {
+    return valueOffset << 16 | valueLength;
+  }
+
+  private static long offset(long location) {
+    return location >>> 16;
+  }
+
+  private static int length(long location) {
+    return (int) (location & 0xFFFF);
+  }
+
+  /**
+   * A log file with the index into it.
+   */
+  private static final class Generation {
+
+    private final FileChannel channel;
+    private final ConcurrentMap<String, Long> index;
+
+    Generation(FileChannel channel, ConcurrentMap<String, Long> index) {
+      this.channel = channel;
+      this.index = index;
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only journal of scheduled transfers, so that pending ones survive a restart. Every booking, cancellation and
+ * completion is one tab separated line, with tabs, line breaks and backslashes in the fields escaped; {@link #replay()}
+ * folds the file into the pending set and rewrites it compacted. Every entry is written through before its method
+ * returns.
+ */
+@Slf4j
+public class ScheduledTransferJournal {
+
+  private static final String SCHEDULED = "S";
+  private static final String CANCELLED = "C";
+  private static final String COMPLETED = "D";
+
+  private final Path path;
+  private BufferedWriter writer;
+
+  public ScheduledTransferJournal(Path path) {
+    this.path = path;
+  }
+
+  /**
+   * Reads the pending transfers back and compacts the journal. Must be called once, before anything is appended.
+   */
+  public synchronized List<ScheduledTransfer> replay() {
+    Map<String, ScheduledTransfer> pending = new LinkedHashMap<>();
+    try {
+      if (path.getParent() != null) {
+        Files.createDirectories(path.getParent());
+      }
+      if (Files.exists(path)) {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            String[] fields = line.split("\t");
+            for (int i = 1; i < fields.length; i++) {
+              fields[i] = unescape(fields[i]);
+            }
+            if (SCHEDULED.equals(fields[0]) && fields.length == 6) {
+              pending.put(fields[1], new ScheduledTransfer(fields[1], fields[2], fields[3],
+                new BigDecimal(fields[4]), Long.parseLong(fields[5])));
+            } else if ((CANCELLED.equals(fields[0]) || COMPLETED.equals(fields[0])) && fields.length == 2) {
+              pending.remove(fields[1]);
+            } else {
+              // a torn last line after a crash, nothing was acknowledged for it
+              log.warn("Skipping malformed scheduled transfer journal entry: {}", line);
+            }
+          }
+        }
+      }
+
+      Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+      try (BufferedWriter out = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+        for (ScheduledTransfer transfer : pending.values()) {
+          out.write(scheduledLine(transfer));
+        }
+      }
+      Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not replay scheduled transfer journal " + path, e);
+    }
+    return new ArrayList<>(pending.values());
+  }
+
+  public synchronized void scheduled(ScheduledTransfer transfer) {
+    write(scheduledLine(transfer));
+  }
+
+  public synchronized void cancelled(String id) {
+    write(CANCELLED + "\t" + escape(id) + "\n");
+  }
+
+  /**
+   * To be called right after the transfer was executed, before it counts as done, so a replay does not execute it
+   * again.
+   */
+  public synchronized void completed(String id) {
+    write(COMPLETED + "\t" + escape(id) + "\n");
+  }
+
+  public synchronized void close() {
+    try {
+      writer.close();
+    } catch (IOException e) {
+      log.warn("Could not close scheduled transfer journal {}", path, e);
+    }
+  }
+
+  private void write(String line) {
+    try {
+      writer.write(line);
+      writer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write scheduled transfer journal " + path, e);
+    }
+  }
+
+  private static String scheduledLine(ScheduledTransfer transfer) {
+    return SCHEDULED + "\t" + escape(transfer.getId()) + "\t" + escape(transfer.getFromAccountId()) + "\t"
+      + escape(transfer.getToAccountId()) + "\t" + transfer.getAmount().toPlainString() + "\t"
+      + transfer.getExecuteAt() + "\n";
+  }
+
+  static String escape(String field) {
+    StringBuilder escaped = new StringBuilder(field.length());
+    for (int i = 0; i < field.length(); i++) {
+      char c = field.charAt(i);
+      switch (c) {
+        case '\\':
+          escaped.append("\\\\");
+          break;
+        case '\t':
+          escaped.append("\\t");
+          break;
+        case '\n':
+          escaped.append("\\n");
+          break;
+        case '\r':
+          escaped.append("\\r");
+          break;
+        default:
+          escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+
+  static String unescape(String field) {
+    if (field.indexOf('\\') < 0) {
+      return field;
+    }
+    StringBuilder unescaped = new StringBuilder(field.length());
+    for (int i = 0; i < field.length(); i++) {
+      char c = field.charAt(i);
+      if (c == '\\' && i + 1 < field.length()) {
+        c = field.charAt(++i);
+        if (c == 't') {
+          c = '\t';
+        } else if (c == 'n') {
+          c = '\n';
+        } else if (c == 'r') {
+          c = '\r';
+        }
+      }
+      unescaped.append(c);
+    }
+    return unescaped.toString();
+  }
+}
@@ -0,0 +1,173 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Account JSON as served by the accounts API, serialized once per balance version and reused until the balance changes.
+ * <p>
+ * An entry belongs to one account instance and one version of its balances: the balance and held balance instances,
+ * which every change replaces. Entries are only stored holding the account's monitor and only if the balances are
+ * still the ones serialized, and every change removes the entry under the same monitor, so a cached response is never
+ * older than the last committed change.
+ * <p>
+ * When full, entries are evicted second-chance (clock) style: a hand sweeps the entries, clearing the referenced flag
+ * of those hit since it last passed and evicting the first one that was not.
+ */
+@Service
+public class AccountResponseCache implements BalanceChangeListener {
+
+	private final AccountsService accountsService;
+
+	private final ObjectMapper objectMapper;
+
+	private final int maxSize;
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder invalidations = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	private final Object evictionLock = new Object();
+
+	// guarded by evictionLock
+	private Iterator<Map.Entry<String, Entry>> clockHand;
+
+	@Autowired
+	public AccountResponseCache(AccountsService accountsService, ObjectMapper objectMapper,
+	                            @Value("${account-response-cache.max-size:100000}") int maxSize) {
+		this.accountsService = accountsService;
+		this.objectMapper = objectMapper;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return the account serialized to JSON, the same bytes the object mapper writes for it
+	 * @throws com.db.awmd.challenge.exception.ResourceNotFoundException if the account does not exist
+	 */
+	public byte[] getJson(String accountId) {
+		Account account = accountsService.getAccount(accountId);
+		Entry entry = entries.get(accountId);
+		if (entry != null && entry.account == account) {
+			hits.increment();
+			if (!entry.referenced) {
+				entry.referenced = true;
+			}
+			return entry.json;
+		}
+		misses.increment();
+		return serialize(accountId);
+	}
+
+	/**
+	 * Runs under the account's monitor, after the change.
+	 */
+	@Override
+	public void balanceChanged(Account account) {
+		if (entries.remove(account.getAccountId()) != null) {
+			invalidations.increment();
+		}
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("size", entries.size());
+		stats.put("maxSize", maxSize);
+		stats.put("hits", hits.sum());
+		stats.put("misses", misses.sum());
+		stats.put("invalidations", invalidations.sum());
+		stats.put("evictions", evictions.sum());
+		return stats;
+	}
+
+	/**
+	 * Serializes a copy of the balances read under the monitor, outside of it, and caches the result if no change came in
+	 * between.
+	 */
+	private byte[] serialize(String accountId) {
+		while (true) {
+			Account account = accountsService.getAccount(accountId);
+			BigDecimal balance;
+			BigDecimal heldBalance;
+			synchronized (account) {
+				if (accountsService.getAccount(account.getHandle()) != account) {
+					continue;
+				}
+				balance = account.getBalance();
+				heldBalance = account.getHeldBalance();
+			}
+			Account copy = new Account(accountId, balance);
+			copy.setHeldBalance(heldBalance);
+			byte[] json;
+			try {
+				json = objectMapper.writeValueAsBytes(copy);
+			} catch (JsonProcessingException e) {
+				throw new IllegalStateException("Could not serialize account " + accountId, e);
+			}
+			synchronized (account) {
+				if (account.getBalance() == balance && account.getHeldBalance() == heldBalance
+						&& accountsService.getAccount(account.getHandle()) == account) {
+					if (entries.size() >= maxSize) {
+						evictOne();
+					}
+					entries.put(accountId, new Entry(account, json));
+				}
+			}
+			return json;
+		}
+	}
+
+	private void evictOne() {
+		synchronized (evictionLock) {
+			// every entry is passed at most twice, the second time with its flag cleared
+			for (int limit = 2 * entries.size() + 1; limit > 0; limit--) {
+				if (clockHand == null || !clockHand.hasNext()) {
+					clockHand = entries.entrySet().iterator();
+					if (!clockHand.hasNext()) {
+						return;
+					}
+				}
+				Map.Entry<String, Entry> candidate = clockHand.next();
+				Entry entry = candidate.getValue();
+				if (entry.referenced) {
+					entry.referenced = false;
+				} else if (entries.remove(candidate.getKey(), entry)) {
+					evictions.increment();
+					return;
+				}
+			}
+		}
+	}
+
+	private static final class Entry {
+
+		private final Account account;
+
+		private final byte[] json;
+
+		// hit since the clock hand last passed
+		private volatile boolean referenced;
+
+		Entry(Account account, byte[] json) {
+			this.account = account;
+			this.json = json;
+		}
+	}
+}
@@ -10,6 +10,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Service
 public class AccountsService {
@@ -17,13 +19,45 @@ public class AccountsService {
   @Getter
   private final AccountsRepository accountsRepository;
 
+  // shared by account creation, exclusive while a snapshot begins or the accounts are cleared
+  private final ReadWriteLock creationLock = new ReentrantReadWriteLock();
+
+  // money put into accounts by createAccount
+  private final BigDecimalAdder issuedTotal = new BigDecimalAdder();
+
+  // false if the repository came with accounts, their initial money is not known then
+  private volatile boolean issuedTotalKnown;
+
+  private volatile BalanceSnapshot activeSnapshot;
+
   @Autowired
   public AccountsService(AccountsRepository accountsRepository) {
     this.accountsRepository = accountsRepository;
+    this.issuedTotalKnown = accountsRepository.getHandleLimit() == 0;
   }
 
   public void createAccount(Account account) {
-    this.accountsRepository.createAccount(account);
+    creationLock.readLock().lock();
+    try {
+      this.accountsRepository.createAccount(account);
+      issuedTotal.add(account.getBalance());
+    } finally {
+      creationLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Removes all accounts, the money issued starts over from zero.
+   */
+  public void clearAccounts() {
+    creationLock.writeLock().lock();
+    try {
+      this.accountsRepository.clearAccounts();
+      issuedTotal.reset();
+      issuedTotalKnown = true;
+    } finally {
+      creationLock.writeLock().unlock();
+    }
   }
 
   public Account getAccount(String accountId) {
@@ -33,5 +67,75 @@ public class AccountsService {
 	  }
 	  return account;
   }
+
+  /**
+   * Lookup by the internal handle of an account obtained before, for re-checks while holding its monitor.
+   * @return the account instance currently held for the handle, null if there is none
+   */
+  public Account getAccount(int handle) {
+    return this.accountsRepository.getAccount(handle);
+  }
+
+  /**
+   * Lookup by handle that also covers accounts the repository only keeps in its backing store or cold tier.
+   * @return the account currently held for the handle, a detached copy of a cold one, null if there is none
+   */
+  public Account loadAccount(int handle) {
+    return this.accountsRepository.loadAccount(handle);
+  }
+
+  public void updateAccount(Account account) {
+    this.accountsRepository.updateAccount(account);
+  }
+
+  /**
+   * See {@link AccountsRepository#beginChange()}.
+   */
+  public int beginChange() {
+    return this.accountsRepository.beginChange();
+  }
+
+  public void endChange(int token) {
+    this.accountsRepository.endChange(token);
+  }
+
+  /**
+   * Begins a point-in-time view of all existing accounts. Account creation is held off meanwhile, so the view and its
+   * issued total cover the same accounts.
+   * @throws IllegalStateException if another snapshot is active
+   */
+  public BalanceSnapshot beginSnapshot() {
+    creationLock.writeLock().lock();
+    try {
+      if (activeSnapshot != null) {
+        throw new IllegalStateException("A balance snapshot is already active");
+      }
+      activeSnapshot = new BalanceSnapshot(accountsRepository.getHandleLimit(),
+        issuedTotalKnown ? issuedTotal.sum() : null);
+      return activeSnapshot;
+    } finally {
+      creationLock.writeLock().unlock();
+    }
+  }
+
+  public void endSnapshot(BalanceSnapshot snapshot) {
+    creationLock.writeLock().lock();
+    try {
+      if (activeSnapshot == snapshot) {
+        activeSnapshot = null;
+      }
+    } finally {
+      creationLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Every balance change looks this up once while holding the monitors of all accounts it changes, and preserves each
+   * of them in the snapshot before changing it.
+   * @return the active snapshot, null if there is none
+   */
+  public BalanceSnapshot getActiveSnapshot() {
+    return activeSnapshot;
+  }
 	
 }
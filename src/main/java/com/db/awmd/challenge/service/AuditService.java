@@ -0,0 +1,238 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.AuditInProgressException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reconciliation audit of the whole book while the service is live.
+ * <p>
+ * The audit reads a {@link BalanceSnapshot}, so it sees every account as of one point in time while transfers and
+ * holds carry on; they only pay for preserving the balances of an account the first time they change it during the
+ * audit. The handle space is split into ranges walked in parallel on a dedicated fork/join pool, each range summing
+ * balances and held balances exactly and checking that none is negative. The grand total is compared against the
+ * expected total: the one given, or else the money put into the accounts when they were created.
+ */
+@Service
+@Slf4j
+public class AuditService {
+
+	private static final int MAX_REPORTED_DISCREPANCIES = 100;
+
+	private final AccountsService accountsService;
+
+	private final int rangeSize;
+
+	private final ForkJoinPool pool;
+
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	private volatile Map<String, Object> lastReport;
+
+	/**
+	 * @param parallelism threads walking the accounts, 0 for one per available processor
+	 * @param rangeSize accounts one task walks without splitting further
+	 */
+	@Autowired
+	public AuditService(AccountsService accountsService,
+	                    @Value("${audit.parallelism:0}") int parallelism,
+	                    @Value("${audit.range-size:4096}") int rangeSize) {
+		this.accountsService = accountsService;
+		this.rangeSize = Math.max(1, rangeSize);
+		this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+				forkJoinPool -> {
+					ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+					thread.setName("audit-" + thread.getPoolIndex());
+					return thread;
+				}, null, false);
+	}
+
+	/**
+	 * Audits all accounts existing when the audit starts, accounts created meanwhile are left to the next audit.
+	 * @param expectedTotal total of all balances and held balances the book should add up to, null for the money issued
+	 *                      by account creation (not known if the repository came with accounts)
+	 * @return totals, whether the book is balanced and the discrepancies found
+	 * @throws AuditInProgressException if another audit is running
+	 */
+	public Map<String, Object> audit(BigDecimal expectedTotal) {
+		if (!running.compareAndSet(false, true)) {
+			throw new AuditInProgressException("An audit is already running");
+		}
+		try {
+			Instant startedAt = Instant.now();
+			long started = System.nanoTime();
+			BalanceSnapshot snapshot = accountsService.beginSnapshot();
+			Tally tally;
+			try {
+				tally = pool.invoke(new RangeAudit(snapshot, 0, snapshot.getHandleLimit()));
+			} finally {
+				accountsService.endSnapshot(snapshot);
+			}
+			Map<String, Object> report = report(snapshot, tally, expectedTotal, startedAt, System.nanoTime() - started);
+			if (Boolean.TRUE.equals(report.get("balanced"))) {
+				log.info("Audit of {} accounts balanced at {}", tally.accounts, report.get("total"));
+			} else {
+				log.warn("Audit of {} accounts found discrepancies: {}", tally.accounts, report.get("discrepancies"));
+			}
+			lastReport = report;
+			return report;
+		} finally {
+			running.set(false);
+		}
+	}
+
+	/**
+	 * @return the report of the last finished audit, null if none ran yet
+	 */
+	public Map<String, Object> getLastReport() {
+		return lastReport;
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		pool.shutdownNow();
+		pool.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	private Map<String, Object> report(BalanceSnapshot snapshot, Tally tally, BigDecimal expectedTotal,
+	                                   Instant startedAt, long durationNanos) {
+		BigDecimal total = tally.balanceTotal.add(tally.heldTotal);
+		String expectedSource = expectedTotal != null ? "request" : snapshot.getIssuedTotal() != null ? "issued" : null;
+		BigDecimal expected = expectedTotal != null ? expectedTotal : snapshot.getIssuedTotal();
+		List<String> discrepancies = new ArrayList<>();
+		BigDecimal difference = null;
+		if (expected != null) {
+			difference = total.subtract(expected);
+			if (difference.signum() != 0) {
+				discrepancies.add("Total " + total + " differs from expected " + expected + " by " + difference);
+			}
+		}
+		discrepancies.addAll(tally.discrepancies);
+
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("startedAt", startedAt.toString());
+		report.put("durationMillis", TimeUnit.NANOSECONDS.toMillis(durationNanos));
+		report.put("parallelism", pool.getParallelism());
+		report.put("accounts", tally.accounts);
+		report.put("changedDuringAudit", snapshot.getPreservedCount());
+		report.put("balanceTotal", tally.balanceTotal);
+		report.put("heldTotal", tally.heldTotal);
+		report.put("total", total);
+		report.put("expectedTotal", expected);
+		report.put("expectedTotalSource", expectedSource);
+		report.put("difference", difference);
+		report.put("negativeAccounts", tally.negativeAccounts);
+		report.put("balanced", discrepancies.isEmpty() && tally.negativeAccounts == 0);
+		report.put("discrepancies", discrepancies);
+		return report;
+	}
+
+	private final class RangeAudit extends RecursiveTask<Tally> {
+
+		private final BalanceSnapshot snapshot;
+
+		private final int from;
+
+		private final int to;
+
+		RangeAudit(BalanceSnapshot snapshot, int from, int to) {
+			this.snapshot = snapshot;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Tally compute() {
+			if (to - from <= rangeSize) {
+				return walk();
+			}
+			int middle = (from + to) >>> 1;
+			RangeAudit lower = new RangeAudit(snapshot, from, middle);
+			lower.fork();
+			Tally upper = new RangeAudit(snapshot, middle, to).compute();
+			return lower.join().merge(upper);
+		}
+
+		/**
+		 * Reads every account of the range holding the monitor of the instance the repository currently holds for it. An
+		 * account only kept in a cold tier or backing store is read from a detached copy, without bringing it in.
+		 */
+		private Tally walk() {
+			Tally tally = new Tally();
+			for (int handle = from; handle < to; handle++) {
+				Account account = accountsService.loadAccount(handle);
+				BigDecimal[] balances = null;
+				while (account != null) {
+					synchronized (account) {
+						Account current = accountsService.getAccount(handle);
+						if (current == account || current == null) {
+							balances = snapshot.read(account);
+							break;
+						}
+					}
+					account = accountsService.loadAccount(handle);
+				}
+				if (account != null) {
+					tally.add(account.getAccountId(), balances[0], balances[1]);
+				}
+			}
+			return tally;
+		}
+	}
+
+	private static final class Tally {
+
+		private long accounts;
+
+		private BigDecimal balanceTotal = BigDecimal.ZERO;
+
+		private BigDecimal heldTotal = BigDecimal.ZERO;
+
+		private long negativeAccounts;
+
+		private final List<String> discrepancies = new ArrayList<>();
+
+		void add(String accountId, BigDecimal balance, BigDecimal heldBalance) {
+			accounts++;
+			balanceTotal = balanceTotal.add(balance);
+			heldTotal = heldTotal.add(heldBalance);
+			if (balance.signum() < 0 || heldBalance.signum() < 0) {
+				negativeAccounts++;
+				if (discrepancies.size() < MAX_REPORTED_DISCREPANCIES) {
+					discrepancies.add("Account " + accountId + " has balance " + balance + " and held balance "
+							+ heldBalance);
+				}
+			}
+		}
+
+		Tally merge(Tally other) {
+			accounts += other.accounts;
+			balanceTotal = balanceTotal.add(other.balanceTotal);
+			heldTotal = heldTotal.add(other.heldTotal);
+			negativeAccounts += other.negativeAccounts;
+			for (String discrepancy : other.discrepancies) {
+				if (discrepancies.size() == MAX_REPORTED_DISCREPANCIES) {
+					break;
+				}
+				discrepancies.add(discrepancy);
+			}
+			return this;
+		}
+	}
+}
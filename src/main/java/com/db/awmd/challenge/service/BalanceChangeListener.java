@@ -0,0 +1,12 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+
+/**
+ * Told about every committed balance change by {@link TransactionService}. Called while the account's monitor is held,
+ * so the changes of one account arrive in commit order; implementations must be quick and must never block.
+ */
+public interface BalanceChangeListener {
+	
+	void balanceChanged(Account account);
+}
@@ -0,0 +1,94 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Point-in-time view of the balances of all accounts that existed when it was begun, read while transfers go on.
+ * <p>
+ * Copy on write: while the snapshot is active, the first change of an account preserves the balances it had before,
+ * and a reader takes the preserved balances of an account, or its live ones if it was not changed yet. Both happen
+ * under the account's monitor and mark the account as taken, so each account is captured exactly once. A change of
+ * several accounts looks up the active snapshot once while holding all of their monitors, so it falls entirely before
+ * or entirely after the point in time of the snapshot.
+ */
+public final class BalanceSnapshot {
+
+	private final int handleLimit;
+
+	private final BigDecimal issuedTotal;
+
+	/**
+	 * One bit per handle below the limit, set once the account's balances at the snapshot point are captured.
+	 */
+	private final AtomicLongArray taken;
+
+	private final ConcurrentMap<Integer, BigDecimal[]> preserved = new ConcurrentHashMap<>();
+
+	BalanceSnapshot(int handleLimit, BigDecimal issuedTotal) {
+		this.handleLimit = handleLimit;
+		this.issuedTotal = issuedTotal;
+		this.taken = new AtomicLongArray((handleLimit + 63) >>> 6);
+	}
+
+	/**
+	 * @return the accounts in the snapshot have the handles from 0 until this one
+	 */
+	public int getHandleLimit() {
+		return handleLimit;
+	}
+
+	/**
+	 * @return the money put into the accounts of the snapshot when they were created, null if it is not known
+	 */
+	public BigDecimal getIssuedTotal() {
+		return issuedTotal;
+	}
+
+	/**
+	 * @return how many accounts changed before they were read
+	 */
+	public int getPreservedCount() {
+		return preserved.size();
+	}
+
+	/**
+	 * Called while holding the account's monitor, before changing its balance or held balance.
+	 */
+	public void preserve(Account account) {
+		int handle = account.getHandle();
+		if (handle >= 0 && handle < handleLimit && take(handle)) {
+			preserved.put(handle, new BigDecimal[] {account.getBalance(), account.getHeldBalance()});
+		}
+	}
+
+	/**
+	 * Called while holding the account's monitor, with the instance the repository holds or one it no longer changes.
+	 * @return the balance and held balance the account had at the snapshot point
+	 */
+	BigDecimal[] read(Account account) {
+		int handle = account.getHandle();
+		if (take(handle)) {
+			return new BigDecimal[] {account.getBalance(), account.getHeldBalance()};
+		}
+		return preserved.get(handle);
+	}
+
+	private boolean take(int handle) {
+		int word = handle >>> 6;
+		long bit = 1L << handle;
+		while (true) {
+			long current = taken.get(word);
+			if ((current & bit) != 0) {
+				return false;
+			}
+			if (taken.compareAndSet(word, current, current | bit)) {
+				return true;
+			}
+		}
+	}
+}
@@ -0,0 +1,458 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceUpdate;
+import com.db.awmd.challenge.exception.InvalidSubscriptionException;
+import com.db.awmd.challenge.exception.ServiceOverloadedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes balance changes of subscribed accounts to server-sent event streams.
+ * <p>
+ * The transfer path only pays for accounts somebody follows, and then only for one map put: the latest change of every
+ * followed account is parked in a shared map that a single dispatcher thread drains and fans out. Each subscriber
+ * keeps at most one pending balance per account, newer ones replace older ones, and is written to by one task at a
+ * time on a small pool of sender threads. A slow client therefore gets the latest balances once it catches up instead
+ * of a backlog, and ties up at most one sender thread.
+ * <p>
+ * Servlet writes block while the client does not read. A send blocked for longer than the send timeout drops its
+ * subscriber and the pool gets a thread in place of the blocked one, up to a bound of extra threads, so stalled clients
+ * do not hold up the others. Completing a stream waits for the emitter's monitor, which a blocked send holds, so streams
+ * are completed on closer threads of their own and never on the dispatcher.
+ */
+@Service
+@Slf4j
+public class BalanceStreamService implements BalanceChangeListener {
+
+	private static final long DISPATCHER_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private static final long STALLED_SENDER_KEEP_ALIVE_SECONDS = 10;
+
+	private final AccountsService accountsService;
+
+	private final int maxSubscribers;
+
+	private final int maxAccountsPerSubscriber;
+
+	private final long timeoutMillis;
+
+	private final long sendTimeoutNanos;
+
+	private final int maxStalledSenders;
+
+	private final ConcurrentMap<String, Set<Subscriber>> subscribersByAccount = new ConcurrentHashMap<>();
+
+	private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+	private final AtomicInteger subscriberCount = new AtomicInteger();
+
+	private final ConcurrentMap<String, BalanceUpdate> pending = new ConcurrentHashMap<>();
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final AtomicBoolean dispatchRequested = new AtomicBoolean();
+
+	private final ThreadPoolExecutor senders;
+
+	private final ThreadPoolExecutor closers;
+
+	// senders blocked in a send that timed out, the pool has a thread more for each; guarded by senders
+	private int stalledSenders;
+
+	private final Thread dispatcher;
+
+	private volatile boolean running = true;
+
+	private final AtomicLong published = new AtomicLong();
+
+	private final AtomicLong coalesced = new AtomicLong();
+
+	private final AtomicLong sent = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private final AtomicLong stalled = new AtomicLong();
+
+	@Autowired
+	public BalanceStreamService(AccountsService accountsService,
+	                            @Value("${balance-stream.senders:4}") int senders,
+	                            @Value("${balance-stream.max-subscribers:10000}") int maxSubscribers,
+	                            @Value("${balance-stream.max-accounts-per-subscriber:100}") int maxAccountsPerSubscriber,
+	                            @Value("${balance-stream.timeout-ms:300000}") long timeoutMillis,
+	                            @Value("${balance-stream.send-timeout-ms:5000}") long sendTimeoutMillis,
+	                            @Value("${balance-stream.max-stalled-senders:16}") int maxStalledSenders) {
+		this.accountsService = accountsService;
+		this.maxSubscribers = maxSubscribers;
+		this.maxAccountsPerSubscriber = maxAccountsPerSubscriber;
+		this.timeoutMillis = timeoutMillis;
+		this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+		this.maxStalledSenders = maxStalledSenders;
+		AtomicInteger senderCount = new AtomicInteger();
+		this.senders = new ThreadPoolExecutor(senders, senders, STALLED_SENDER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "balance-stream-sender-" + senderCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		AtomicInteger closerCount = new AtomicInteger();
+		int closers = Math.max(1, maxStalledSenders);
+		this.closers = new ThreadPoolExecutor(closers, closers, STALLED_SENDER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "balance-stream-closer-" + closerCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.closers.allowCoreThreadTimeOut(true);
+		this.dispatcher = new Thread(this::dispatchLoop, "balance-stream-dispatcher");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+	}
+
+	/**
+	 * Opens a stream of balance updates for the given accounts. The current balance of every account is sent first,
+	 * then every committed change, coalesced to the latest balance while the client is behind.
+	 * @throws com.db.awmd.challenge.exception.ResourceNotFoundException if one of the accounts does not exist
+	 * @throws InvalidSubscriptionException if no or too many accounts are given
+	 * @throws ServiceOverloadedException if the maximum number of subscribers is reached
+	 */
+	public SseEmitter subscribe(Collection<String> accountIds) {
+		Set<String> ids = new LinkedHashSet<>(accountIds);
+		if (ids.isEmpty() || ids.size() > maxAccountsPerSubscriber) {
+			throw new InvalidSubscriptionException("Between 1 and " + maxAccountsPerSubscriber + " accounts can be " +
+					"followed by one subscriber");
+		}
+		for (String accountId : ids) {
+			accountsService.getAccount(accountId);
+		}
+		if (subscriberCount.incrementAndGet() > maxSubscribers) {
+			subscriberCount.decrementAndGet();
+			throw new ServiceOverloadedException("Too many balance subscribers, try again later");
+		}
+
+		SseEmitter emitter = createEmitter(timeoutMillis);
+		Subscriber subscriber = new Subscriber(emitter, new ArrayList<>(ids));
+		subscribers.add(subscriber);
+		for (String accountId : ids) {
+			subscribersByAccount.compute(accountId, (id, followers) -> {
+				Set<Subscriber> updated = followers == null ? ConcurrentHashMap.newKeySet() : followers;
+				updated.add(subscriber);
+				return updated;
+			});
+		}
+		emitter.onCompletion(() -> unsubscribe(subscriber));
+		emitter.onTimeout(() -> unsubscribe(subscriber));
+
+		for (String accountId : ids) {
+			subscriber.offer(currentBalance(accountId));
+		}
+		return emitter;
+	}
+
+	/**
+	 * Parks the new balance for the dispatcher if anybody follows the account. Runs under the account's monitor, which
+	 * orders the sequence numbers of one account the same way as its changes.
+	 */
+	@Override
+	public void balanceChanged(Account account) {
+		if (!subscribersByAccount.containsKey(account.getAccountId())) {
+			return;
+		}
+		BalanceUpdate update = new BalanceUpdate(account.getAccountId(), account.getBalance(),
+				sequence.incrementAndGet());
+		if (pending.put(account.getAccountId(), update) != null) {
+			coalesced.incrementAndGet();
+		}
+		published.incrementAndGet();
+		if (dispatchRequested.compareAndSet(false, true)) {
+			LockSupport.unpark(dispatcher);
+		}
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("subscribers", subscriberCount.get());
+		stats.put("followedAccounts", subscribersByAccount.size());
+		stats.put("published", published.get());
+		stats.put("coalesced", coalesced.get());
+		stats.put("sent", sent.get());
+		stats.put("failed", failed.get());
+		stats.put("stalled", stalled.get());
+		synchronized (senders) {
+			stats.put("stalledSenders", stalledSenders);
+		}
+		return stats;
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		running = false;
+		LockSupport.unpark(dispatcher);
+		dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+		senders.shutdown();
+		senders.awaitTermination(5, TimeUnit.SECONDS);
+		for (Subscriber subscriber : subscribers) {
+			closers.execute(subscriber.emitter::complete);
+		}
+		closers.shutdown();
+		// closers still blocked by a stalled send are daemons and do not hold up the shutdown
+		closers.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Creates the emitter of a new subscriber.
+	 */
+	protected SseEmitter createEmitter(long timeoutMillis) {
+		return new SseEmitter(timeoutMillis);
+	}
+
+	/**
+	 * Reads the balance under the account's monitor, so it is sequenced consistently with concurrent changes. Retries
+	 * if the repository replaced the instance meanwhile, its balance could be outdated.
+	 */
+	private BalanceUpdate currentBalance(String accountId) {
+		while (true) {
+			Account account = accountsService.getAccount(accountId);
+			synchronized (account) {
+				if (accountsService.getAccount(account.getHandle()) == account) {
+					return new BalanceUpdate(accountId, account.getBalance(), sequence.incrementAndGet());
+				}
+			}
+		}
+	}
+
+	private void unsubscribe(Subscriber subscriber) {
+		if (!subscribers.remove(subscriber)) {
+			return;
+		}
+		subscriberCount.decrementAndGet();
+		subscriber.closed = true;
+		for (String accountId : subscriber.accountIds) {
+			subscribersByAccount.computeIfPresent(accountId, (id, followers) -> {
+				followers.remove(subscriber);
+				return followers.isEmpty() ? null : followers;
+			});
+		}
+	}
+
+	private void dispatchLoop() {
+		long lastExpiryCheck = System.nanoTime();
+		while (running) {
+			try {
+				if (System.nanoTime() - lastExpiryCheck >= DISPATCHER_IDLE_NANOS) {
+					lastExpiryCheck = System.nanoTime();
+					expireStalledSends();
+				}
+				if (!dispatchRequested.compareAndSet(true, false)) {
+					LockSupport.parkNanos(this, DISPATCHER_IDLE_NANOS);
+					continue;
+				}
+				dispatch();
+			} catch (RuntimeException e) {
+				log.error("Balance stream dispatch failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Drops the subscribers whose send has been blocked for longer than the send timeout and makes up for their sender
+	 * threads. Completing the stream closes the connection, which eventually fails the blocked write. Completion waits
+	 * for the emitter's monitor, which the blocked send holds, so it runs on a closer thread.
+	 */
+	private void expireStalledSends() {
+		long deadline = System.nanoTime() - sendTimeoutNanos;
+		for (Subscriber subscriber : subscribers) {
+			if (subscriber.stallIfSendingSince(deadline)) {
+				stalled.incrementAndGet();
+				log.debug("Dropping balance subscriber for {}: send blocked for more than {} ms", subscriber.accountIds,
+						TimeUnit.NANOSECONDS.toMillis(sendTimeoutNanos));
+				unsubscribe(subscriber);
+				SseEmitter emitter = subscriber.emitter;
+				closers.execute(() -> emitter.completeWithError(new IOException("Balance send timed out")));
+			}
+		}
+	}
+
+	/**
+	 * Adds a sender thread in place of one blocked in a stalled send.
+	 * @return false if the bound of extra threads is reached
+	 */
+	private boolean addSender() {
+		synchronized (senders) {
+			if (stalledSenders == maxStalledSenders) {
+				return false;
+			}
+			stalledSenders++;
+			senders.setMaximumPoolSize(senders.getMaximumPoolSize() + 1);
+			senders.setCorePoolSize(senders.getCorePoolSize() + 1);
+			return true;
+		}
+	}
+
+	/**
+	 * Removes the thread added for a stalled send once that send returned.
+	 */
+	private void removeSender() {
+		synchronized (senders) {
+			stalledSenders--;
+			senders.setCorePoolSize(senders.getCorePoolSize() - 1);
+			senders.setMaximumPoolSize(senders.getMaximumPoolSize() - 1);
+		}
+	}
+
+	private void dispatch() {
+		for (String accountId : pending.keySet()) {
+			BalanceUpdate update = pending.remove(accountId);
+			Set<Subscriber> followers = update == null ? null : subscribersByAccount.get(accountId);
+			if (followers != null) {
+				for (Subscriber subscriber : followers) {
+					subscriber.offer(update);
+				}
+			}
+		}
+	}
+
+	private final class Subscriber {
+
+		private final SseEmitter emitter;
+
+		private final List<String> accountIds;
+
+		private final ConcurrentMap<String, BalanceUpdate> latest = new ConcurrentHashMap<>();
+
+		/**
+		 * Only touched by the one send task running for this subscriber.
+		 */
+		private final Map<String, Long> sentSequences = new HashMap<>();
+
+		/**
+		 * Offers not yet seen by a send task; the offer that raises it from zero schedules the task.
+		 */
+		private final AtomicInteger signals = new AtomicInteger();
+
+		private volatile boolean closed;
+
+		// state of the send in progress, guarded by this
+		private boolean sending;
+
+		private long sendStarted;
+
+		private boolean timedOut;
+
+		private boolean senderReplaced;
+
+		Subscriber(SseEmitter emitter, List<String> accountIds) {
+			this.emitter = emitter;
+			this.accountIds = accountIds;
+		}
+
+		void offer(BalanceUpdate update) {
+			latest.merge(update.getAccountId(), update, (current, offered) -> {
+				coalesced.incrementAndGet();
+				return offered.getSequence() > current.getSequence() ? offered : current;
+			});
+			if (signals.getAndIncrement() == 0) {
+				try {
+					senders.execute(this::drain);
+				} catch (RejectedExecutionException e) {
+					// shutting down
+					signals.set(0);
+				}
+			}
+		}
+
+		private void drain() {
+			int seen;
+			do {
+				seen = signals.get();
+				sendLatest();
+			} while (signals.addAndGet(-seen) != 0);
+		}
+
+		private synchronized void sendStarting() {
+			sending = true;
+			sendStarted = System.nanoTime();
+		}
+
+		private void sendFinished() {
+			boolean replaced;
+			synchronized (this) {
+				sending = false;
+				replaced = senderReplaced;
+				senderReplaced = false;
+			}
+			if (replaced) {
+				removeSender();
+			}
+		}
+
+		/**
+		 * Marks the send timed out if a send has been in progress since before the deadline, and adds a sender
+		 * thread in place of the blocked one if the bound allows.
+		 * @return true if the send just timed out
+		 */
+		synchronized boolean stallIfSendingSince(long deadline) {
+			if (!sending || timedOut || sendStarted - deadline > 0) {
+				return false;
+			}
+			timedOut = true;
+			senderReplaced = addSender();
+			return true;
+		}
+
+		private void sendLatest() {
+			for (String accountId : latest.keySet()) {
+				BalanceUpdate update = latest.remove(accountId);
+				if (update == null || closed) {
+					continue;
+				}
+				Long sentSequence = sentSequences.get(accountId);
+				if (sentSequence != null && sentSequence >= update.getSequence()) {
+					continue;
+				}
+				sendStarting();
+				try {
+					emitter.send(SseEmitter.event()
+							.id(Long.toString(update.getSequence()))
+							.name("balance")
+							.data(update));
+					sentSequences.put(accountId, update.getSequence());
+					sent.incrementAndGet();
+				} catch (IOException | IllegalStateException e) {
+					// client went away or the stream timed out, the container completes the request itself
+					failed.incrementAndGet();
+					log.debug("Dropping balance subscriber for {}: {}", accountIds, e.toString());
+					unsubscribe(this);
+					latest.clear();
+					return;
+				} finally {
+					sendFinished();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+
+/**
+ * Exact sum of amounts added from many threads, striped like {@link java.util.concurrent.atomic.LongAdder}: every add
+ * goes to one of a few cells picked by thread, each with its own lock, and {@link #sum()} adds the cells up. The sum is
+ * only exact while no add runs concurrently.
+ */
+final class BigDecimalAdder {
+
+	private final Cell[] cells;
+
+	BigDecimalAdder() {
+		int count = Integer.highestOneBit(Math.max(1, 2 * Runtime.getRuntime().availableProcessors() - 1)) << 1;
+		cells = new Cell[count];
+		for (int i = 0; i < count; i++) {
+			cells[i] = new Cell();
+		}
+	}
+
+	void add(BigDecimal amount) {
+		long id = Thread.currentThread().getId();
+		Cell cell = cells[(int) (id ^ (id >>> 16)) & (cells.length - 1)];
+		synchronized (cell) {
+			cell.value = cell.value.add(amount);
+		}
+	}
+
+	BigDecimal sum() {
+		BigDecimal sum = BigDecimal.ZERO;
+		for (Cell cell : cells) {
+			synchronized (cell) {
+				sum = sum.add(cell.value);
+			}
+		}
+		return sum;
+	}
+
+	void reset() {
+		for (Cell cell : cells) {
+			synchronized (cell) {
+				cell.value = BigDecimal.ZERO;
+			}
+		}
+	}
+
+	private static final class Cell {
+
+		private BigDecimal value = BigDecimal.ZERO;
+	}
+}
@@ -0,0 +1,445 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Hold;
+import com.db.awmd.challenge.domain.HoldSettlement;
+import com.db.awmd.challenge.exception.InvalidAmountException;
+import com.db.awmd.challenge.exception.LowBalanceException;
+import com.db.awmd.challenge.exception.ResourceNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Two-phase transfers: an authorization moves funds from the available to the held balance of an account, and the hold
+ * is later settled to another account, released back, or released automatically once it expires.
+ * <p>
+ * Authorizing only locks the one account, so it costs about as much as a single-account update. Whoever removes a
+ * hold from the open holds first owns it, which settles races between settlement, release and expiry. Batches take
+ * every pair of accounts (or account, for releases) once, however many holds they finalize between them.
+ * <p>
+ * Holds are kept in memory only. A repository persisting balances persists available plus held funds and keeps
+ * accounts with open holds cached, so a restart releases every open hold.
+ */
+@Service
+@Slf4j
+public class HoldService {
+
+	private static final String SETTLED = "SETTLED";
+
+	private static final String RELEASED = "RELEASED";
+
+	private static final int EXPIRY_STRIPES = 8;
+
+	private final AccountsService accountsService;
+
+	private final List<BalanceChangeListener> balanceChangeListeners;
+
+	private final long defaultTtlMillis;
+
+	private final long maxTtlMillis;
+
+	private final ConcurrentMap<String, Hold> holds = new ConcurrentHashMap<>();
+
+	/**
+	 * Expiry of the open holds by id. Striped, because every wheel operation is synchronized; the expiry of a hold
+	 * settled or released first is cancelled.
+	 */
+	private final List<TimingWheel<String>> expiries = new ArrayList<>();
+
+	private final ScheduledExecutorService ticker;
+
+	private final LongAdder authorized = new LongAdder();
+
+	private final LongAdder settled = new LongAdder();
+
+	private final LongAdder released = new LongAdder();
+
+	private final LongAdder expired = new LongAdder();
+
+	@Autowired
+	public HoldService(AccountsService accountsService, List<BalanceChangeListener> balanceChangeListeners,
+	                   @Value("${holds.default-ttl-seconds:900}") long defaultTtlSeconds,
+	                   @Value("${holds.max-ttl-seconds:604800}") long maxTtlSeconds,
+	                   @Value("${holds.tick-ms:1000}") long tickMillis) {
+		this.accountsService = accountsService;
+		this.balanceChangeListeners = balanceChangeListeners;
+		this.defaultTtlMillis = TimeUnit.SECONDS.toMillis(defaultTtlSeconds);
+		this.maxTtlMillis = TimeUnit.SECONDS.toMillis(maxTtlSeconds);
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < EXPIRY_STRIPES; i++) {
+			expiries.add(new TimingWheel<>(tickMillis, now));
+		}
+		this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "hold-expiry");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.ticker.scheduleAtFixedRate(this::expire, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		ticker.shutdownNow();
+	}
+
+	/**
+	 * Reserves the amount on the account.
+	 * @param ttlMillis time after which the hold is released if still open, the default if not positive, capped at the
+	 * configured maximum
+	 * @return the open hold
+	 * @throws LowBalanceException if the available balance is lower than the amount
+	 */
+	public Hold authorize(String accountId, BigDecimal amount, long ttlMillis) {
+		if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+			throw new InvalidAmountException("Hold amount should be greater than 0.");
+		}
+		long ttl = ttlMillis > 0 ? Math.min(ttlMillis, maxTtlMillis) : defaultTtlMillis;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		// not UUID.randomUUID(), its shared SecureRandom would serialize authorizations
+		Hold hold = new Hold(new UUID(random.nextLong(), random.nextLong()).toString(), accountId, amount,
+				System.currentTimeMillis() + ttl);
+		withAccountLocked(accountId, account -> {
+			if (account.getBalance().compareTo(amount) < 0) {
+				throw new LowBalanceException("Available balance is less than amount to be held.");
+			}
+			account.setBalance(account.getBalance().subtract(amount));
+			account.setHeldBalance(account.getHeldBalance().add(amount));
+			// scheduled before the hold is published, whoever claims it finds the expiry to cancel
+			hold.setExpiry(expiries.get(stripe(hold.getId())).schedule(hold.getId(), hold.getExpiresAt()));
+			holds.put(hold.getId(), hold);
+			changed(account);
+		});
+		authorized.increment();
+		return hold;
+	}
+
+	/**
+	 * @return the open hold, null if it is unknown or already settled, released or expired
+	 */
+	public Hold getHold(String holdId) {
+		return holds.get(holdId);
+	}
+
+	/**
+	 * Moves the settled amount from the held balance to the receiving account and releases the rest of the hold.
+	 * @throws ResourceNotFoundException if the hold is not open or the receiving account does not exist
+	 */
+	public void settle(HoldSettlement settlement) {
+		Hold hold = claim(settlement);
+		settleClaimed(Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>(hold, settlement)));
+	}
+
+	/**
+	 * Settles every hold it can; one failing settlement does not stop the others.
+	 * @return per hold id, SETTLED or the reason it was not settled
+	 * @throws IllegalArgumentException if a hold id appears more than once, nothing is settled then
+	 */
+	public Map<String, String> settleAll(List<HoldSettlement> settlements) {
+		List<String> holdIds = new ArrayList<>(settlements.size());
+		for (HoldSettlement settlement : settlements) {
+			holdIds.add(settlement.getHoldId());
+		}
+		requireDistinct(holdIds);
+		Map<String, String> results = new LinkedHashMap<>();
+		List<Map.Entry<Hold, HoldSettlement>> claimed = new ArrayList<>();
+		for (HoldSettlement settlement : settlements) {
+			try {
+				claimed.add(new AbstractMap.SimpleImmutableEntry<>(claim(settlement), settlement));
+				results.put(settlement.getHoldId(), SETTLED);
+			} catch (ResourceNotFoundException | InvalidAmountException e) {
+				results.put(settlement.getHoldId(), e.getMessage());
+			}
+		}
+		settleClaimed(claimed);
+		return results;
+	}
+
+	/**
+	 * Returns the held amount to the available balance.
+	 * @throws ResourceNotFoundException if the hold is not open
+	 */
+	public void release(String holdId) {
+		releaseClaimed(Collections.singletonList(claim(holdId)));
+		released.increment();
+	}
+
+	/**
+	 * Releases every open hold of the list.
+	 * @return per hold id, RELEASED or the reason it was not released
+	 * @throws IllegalArgumentException if a hold id appears more than once, nothing is released then
+	 */
+	public Map<String, String> releaseAll(List<String> holdIds) {
+		requireDistinct(holdIds);
+		Map<String, String> results = new LinkedHashMap<>();
+		List<Hold> claimed = new ArrayList<>();
+		for (String holdId : holdIds) {
+			try {
+				claimed.add(claim(holdId));
+				results.put(holdId, RELEASED);
+			} catch (ResourceNotFoundException e) {
+				results.put(holdId, e.getMessage());
+			}
+		}
+		releaseClaimed(claimed);
+		released.add(claimed.size());
+		return results;
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("open", holds.size());
+		stats.put("authorized", authorized.sum());
+		stats.put("settled", settled.sum());
+		stats.put("released", released.sum());
+		stats.put("expired", expired.sum());
+		int pendingExpiries = 0;
+		for (TimingWheel<String> expiry : expiries) {
+			pendingExpiries += expiry.size();
+		}
+		stats.put("pendingExpiries", pendingExpiries);
+		return stats;
+	}
+
+	private Hold claim(HoldSettlement settlement) {
+		Hold hold = holds.get(settlement.getHoldId());
+		if (hold == null) {
+			throw notOpen(settlement.getHoldId());
+		}
+		BigDecimal amount = settlement.getAmount() == null ? hold.getAmount() : settlement.getAmount();
+		if (amount.compareTo(BigDecimal.ZERO) <= 0 || amount.compareTo(hold.getAmount()) > 0) {
+			throw new InvalidAmountException("Settled amount should be greater than 0 and at most the held amount " +
+					hold.getAmount() + ".");
+		}
+		accountsService.getAccount(settlement.getToAccountId());
+		if (!holds.remove(hold.getId(), hold)) {
+			throw notOpen(hold.getId());
+		}
+		cancelExpiry(hold);
+		return hold;
+	}
+
+	private Hold claim(String holdId) {
+		Hold hold = holds.remove(holdId);
+		if (hold == null) {
+			throw notOpen(holdId);
+		}
+		cancelExpiry(hold);
+		return hold;
+	}
+
+	private void cancelExpiry(Hold hold) {
+		expiries.get(stripe(hold.getId())).cancel(hold.getExpiry());
+	}
+
+	/**
+	 * Results are reported per hold id, a second entry for a hold would hide the outcome of the first.
+	 */
+	private static void requireDistinct(List<String> holdIds) {
+		Set<String> seen = new HashSet<>();
+		for (String holdId : holdIds) {
+			if (!seen.add(holdId)) {
+				throw new IllegalArgumentException("Hold " + holdId + " appears more than once in the batch");
+			}
+		}
+	}
+
+	private static ResourceNotFoundException notOpen(String holdId) {
+		return new ResourceNotFoundException("Hold " + holdId + " not found or already settled, released or expired");
+	}
+
+	/**
+	 * Applies claimed settlements, each pair of paying and receiving account under one lock.
+	 */
+	private void settleClaimed(List<Map.Entry<Hold, HoldSettlement>> claimed) {
+		Map<Map.Entry<String, String>, List<Map.Entry<Hold, HoldSettlement>>> byAccounts = new LinkedHashMap<>();
+		for (Map.Entry<Hold, HoldSettlement> entry : claimed) {
+			byAccounts.computeIfAbsent(new AbstractMap.SimpleImmutableEntry<>(entry.getKey().getAccountId(),
+					entry.getValue().getToAccountId()), accounts -> new ArrayList<>()).add(entry);
+		}
+		for (Map.Entry<Map.Entry<String, String>, List<Map.Entry<Hold, HoldSettlement>>> group : byAccounts.entrySet()) {
+			BigDecimal held = BigDecimal.ZERO;
+			BigDecimal paid = BigDecimal.ZERO;
+			for (Map.Entry<Hold, HoldSettlement> entry : group.getValue()) {
+				BigDecimal amount = entry.getValue().getAmount();
+				held = held.add(entry.getKey().getAmount());
+				paid = paid.add(amount == null ? entry.getKey().getAmount() : amount);
+			}
+			BigDecimal totalHeld = held;
+			BigDecimal totalPaid = paid;
+			withAccountsLocked(group.getKey().getKey(), group.getKey().getValue(), (fromAccount, toAccount) -> {
+				fromAccount.setHeldBalance(fromAccount.getHeldBalance().subtract(totalHeld));
+				fromAccount.setBalance(fromAccount.getBalance().add(totalHeld.subtract(totalPaid)));
+				toAccount.setBalance(toAccount.getBalance().add(totalPaid));
+				changed(fromAccount);
+				if (toAccount != fromAccount) {
+					changed(toAccount);
+				}
+			});
+			settled.add(group.getValue().size());
+		}
+	}
+
+	/**
+	 * Returns claimed holds to the available balance, each account under one lock.
+	 */
+	private void releaseClaimed(List<Hold> claimed) {
+		Map<String, BigDecimal> byAccount = new LinkedHashMap<>();
+		for (Hold hold : claimed) {
+			byAccount.merge(hold.getAccountId(), hold.getAmount(), BigDecimal::add);
+		}
+		for (Map.Entry<String, BigDecimal> entry : byAccount.entrySet()) {
+			withAccountLocked(entry.getKey(), account -> {
+				account.setHeldBalance(account.getHeldBalance().subtract(entry.getValue()));
+				account.setBalance(account.getBalance().add(entry.getValue()));
+				changed(account);
+			});
+		}
+	}
+
+	/**
+	 * Releases the holds that are due, one account at a time. Each hold is removed from the open holds under the
+	 * account's monitor, together with the release of its funds, so the holds of an account that cannot be released
+	 * stay open; they are retried on the next tick.
+	 */
+	private void expire() {
+		try {
+			long now = System.currentTimeMillis();
+			Map<String, List<Hold>> due = new LinkedHashMap<>();
+			for (TimingWheel<String> expiry : expiries) {
+				for (TimingWheel.Timeout<String> timeout : expiry.advance(now)) {
+					Hold hold = holds.get(timeout.getPayload());
+					if (hold != null) {
+						due.computeIfAbsent(hold.getAccountId(), accountId -> new ArrayList<>()).add(hold);
+					}
+				}
+			}
+			for (Map.Entry<String, List<Hold>> entry : due.entrySet()) {
+				try {
+					withAccountLocked(entry.getKey(), account -> releaseExpired(account, entry.getValue()));
+				} catch (RuntimeException e) {
+					for (Hold hold : entry.getValue()) {
+						if (holds.get(hold.getId()) == hold) {
+							hold.setExpiry(expiries.get(stripe(hold.getId())).schedule(hold.getId(), now));
+						}
+					}
+					log.error("Could not release expired holds of account {}, retrying", entry.getKey(), e);
+				}
+			}
+		} catch (RuntimeException e) {
+			// an exception would cancel the periodic task and leave every later hold open forever
+			log.error("Hold expiry failed", e);
+		}
+	}
+
+	/**
+	 * Called holding the account's monitor. Skips the holds settled or released since they were found due.
+	 */
+	private void releaseExpired(Account account, List<Hold> due) {
+		BigDecimal amount = BigDecimal.ZERO;
+		int count = 0;
+		for (Hold hold : due) {
+			if (holds.remove(hold.getId(), hold)) {
+				amount = amount.add(hold.getAmount());
+				count++;
+			}
+		}
+		if (count == 0) {
+			return;
+		}
+		account.setHeldBalance(account.getHeldBalance().subtract(amount));
+		account.setBalance(account.getBalance().add(amount));
+		expired.add(count);
+		changed(account);
+		log.debug("Released {} expired holds of account {}", count, account.getAccountId());
+	}
+
+	private void changed(Account account) {
+		accountsService.updateAccount(account);
+		for (BalanceChangeListener listener : balanceChangeListeners) {
+			listener.balanceChanged(account);
+		}
+	}
+
+	/**
+	 * Runs the update holding the monitor of the instance the repository currently holds for the account, after
+	 * preserving the account in the active balance snapshot, if any, and as one change of the repository.
+	 */
+	private void withAccountLocked(String accountId, Consumer<Account> update) {
+		while (true) {
+			Account account = accountsService.getAccount(accountId);
+			synchronized (account) {
+				if (accountsService.getAccount(account.getHandle()) == account) {
+					BalanceSnapshot snapshot = accountsService.getActiveSnapshot();
+					if (snapshot != null) {
+						snapshot.preserve(account);
+					}
+					int change = accountsService.beginChange();
+					try {
+						update.accept(account);
+					} finally {
+						accountsService.endChange(change);
+					}
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Like {@link #withAccountLocked}, for two accounts (possibly the same one) locked in the order transfers use.
+	 */
+	private void withAccountsLocked(String fromAccountId, String toAccountId, BiConsumer<Account, Account> update) {
+		while (true) {
+			Account fromAccount = accountsService.getAccount(fromAccountId);
+			Account toAccount = accountsService.getAccount(toAccountId);
+			Account firstLock = fromAccount.getHandle() > toAccount.getHandle() ? fromAccount : toAccount;
+			Account secondLock = firstLock == fromAccount ? toAccount : fromAccount;
+			synchronized (firstLock) {
+				synchronized (secondLock) {
+					if (accountsService.getAccount(fromAccount.getHandle()) == fromAccount
+							&& accountsService.getAccount(toAccount.getHandle()) == toAccount) {
+						BalanceSnapshot snapshot = accountsService.getActiveSnapshot();
+						if (snapshot != null) {
+							snapshot.preserve(fromAccount);
+							snapshot.preserve(toAccount);
+						}
+						int change = accountsService.beginChange();
+						try {
+							update.accept(fromAccount, toAccount);
+						} finally {
+							accountsService.endChange(change);
+						}
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	private static int stripe(String holdId) {
+		return (holdId.hashCode() & Integer.MAX_VALUE) % EXPIRY_STRIPES;
+	}
+}
@@ -0,0 +1,75 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.metrics.HeavyHitters;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks which accounts are transferred most often and which ones are most often found locked by another transfer,
+ * over a sliding window. Fed from {@link TransactionService#transfer}; an account counts as contended when waiting for
+ * its monitor took longer than the configured threshold.
+ */
+@Component
+public class HotAccountTracker {
+
+	private final boolean enabled;
+
+	private final long contentionThresholdNanos;
+
+	private final HeavyHitters transfers;
+
+	private final HeavyHitters contended;
+
+	@Autowired
+	public HotAccountTracker(@Value("${transfer.hot-accounts.enabled:true}") boolean enabled,
+	                         @Value("${transfer.hot-accounts.top-k:32}") int topK,
+	                         @Value("${transfer.hot-accounts.window-seconds:60}") long windowSeconds,
+	                         @Value("${transfer.hot-accounts.contention-threshold-micros:50}") long contentionThresholdMicros) {
+		this.enabled = enabled;
+		this.contentionThresholdNanos = TimeUnit.MICROSECONDS.toNanos(contentionThresholdMicros);
+		long windowMillis = TimeUnit.SECONDS.toMillis(windowSeconds);
+		this.transfers = new HeavyHitters(2048, topK, windowMillis, 6);
+		this.contended = new HeavyHitters(1024, topK, windowMillis, 6);
+	}
+
+	/**
+	 * Creates a tracker that records nothing, for services built outside of the application context.
+	 */
+	public static HotAccountTracker disabled() {
+		return new HotAccountTracker(false, 1, 60, 0);
+	}
+
+	public void transferRequested(String fromAccountId, String toAccountId) {
+		if (enabled) {
+			transfers.record(fromAccountId);
+			transfers.record(toAccountId);
+		}
+	}
+
+	/**
+	 * @param accountId account whose monitor was acquired
+	 * @param waitedNanos time spent waiting for the monitor
+	 */
+	public void lockAcquired(String accountId, long waitedNanos) {
+		if (enabled && waitedNanos >= contentionThresholdNanos) {
+			contended.record(accountId);
+		}
+	}
+
+	public Map<String, Object> getHotAccounts(int limit) {
+		Map<String, Object> hotAccounts = new LinkedHashMap<>();
+		hotAccounts.put("transfers", transfers.top(limit));
+		hotAccounts.put("contended", contended.top(limit));
+		return hotAccounts;
+	}
+
+	public void clear() {
+		transfers.clear();
+		contended.clear();
+	}
+}
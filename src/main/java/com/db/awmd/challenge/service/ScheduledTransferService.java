@@ -0,0 +1,249 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.exception.AccountBusyException;
+import com.db.awmd.challenge.exception.InvalidAmountException;
+import com.db.awmd.challenge.exception.ServiceOverloadedException;
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+import com.db.awmd.challenge.repository.ScheduledTransferJournal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Books transfers to be executed at a future time. Pending transfers sit in a {@link TimingWheel} driven by a single
+ * ticker thread; whatever falls due on a tick is handed to a small worker pool in batches and executed through
+ * {@link TransactionService}, in the bulk lane of the {@link TransferScheduler}. Workers never wait for a slot, a
+ * transfer that cannot start right away is rescheduled. Execution lag (actual start minus due time) is recorded per
+ * transfer.
+ * <p>
+ * If a journal path is configured, bookings, cancellations and completions are journaled and pending transfers are
+ * reloaded on startup. A completion is written through right after its transfer, so a crash re-executes at most the
+ * transfers that were running on the workers.
+ */
+@Service
+@Slf4j
+public class ScheduledTransferService {
+
+	private final TransferScheduler transferScheduler;
+
+	private final AccountsService accountsService;
+
+	private final long tickMillis;
+
+	private final int batchSize;
+
+	private final int workers;
+
+	private final long retryDelayMillis;
+
+	private final ScheduledTransferJournal journal;
+
+	private final TimingWheel<ScheduledTransfer> wheel;
+
+	// registering and unregistering a timeout hold the map's monitor, so a transfer falling due right away cannot be
+	// unregistered by its execution before it was registered
+	private final ConcurrentMap<String, TimingWheel.Timeout<ScheduledTransfer>> pending = new ConcurrentHashMap<>();
+
+	// transfers waiting for a retry, their execution lag was already recorded on the first attempt
+	private final Set<String> retrying = ConcurrentHashMap.newKeySet();
+
+	private final LatencyHistogram executionLag = new LatencyHistogram();
+
+	private final LongAdder executed = new LongAdder();
+
+	private final LongAdder failed = new LongAdder();
+
+	private final LongAdder retried = new LongAdder();
+
+	private ScheduledExecutorService ticker;
+
+	private ExecutorService executor;
+
+	@Autowired
+	public ScheduledTransferService(TransferScheduler transferScheduler, AccountsService accountsService,
+	                                @Value("${transfer.scheduled.tick-ms:100}") long tickMillis,
+	                                @Value("${transfer.scheduled.batch-size:256}") int batchSize,
+	                                @Value("${transfer.scheduled.workers:4}") int workers,
+	                                @Value("${transfer.scheduled.retry-delay-ms:1000}") long retryDelayMillis,
+	                                @Value("${transfer.scheduled.journal:}") String journalPath) {
+		this.transferScheduler = transferScheduler;
+		this.accountsService = accountsService;
+		this.tickMillis = tickMillis;
+		this.batchSize = batchSize;
+		this.workers = workers;
+		this.retryDelayMillis = retryDelayMillis;
+		this.journal = journalPath.isEmpty() ? null : new ScheduledTransferJournal(Paths.get(journalPath));
+		this.wheel = new TimingWheel<>(tickMillis, System.currentTimeMillis());
+	}
+
+	@PostConstruct
+	public void start() {
+		if (journal != null) {
+			List<ScheduledTransfer> recovered = journal.replay();
+			for (ScheduledTransfer transfer : recovered) {
+				pending.put(transfer.getId(), wheel.schedule(transfer, transfer.getExecuteAt()));
+			}
+			log.info("Recovered {} scheduled transfers from journal", recovered.size());
+		}
+		executor = Executors.newFixedThreadPool(workers, namedThreads("scheduled-transfer-"));
+		ticker = Executors.newSingleThreadScheduledExecutor(namedThreads("scheduled-transfer-ticker-"));
+		ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		ticker.shutdownNow();
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		if (journal != null) {
+			journal.close();
+		}
+	}
+
+	/**
+	 * Books a transfer for the given due time. Transfers already due are executed on the next tick.
+	 * @param fromAccountId
+	 * @param toAccountId
+	 * @param amountToTransfer
+	 * @param executeAt due time in epoch milliseconds
+	 * @return the booked transfer
+	 */
+	public ScheduledTransfer schedule(String fromAccountId, String toAccountId, BigDecimal amountToTransfer,
+	                                  long executeAt) {
+		if (amountToTransfer == null || amountToTransfer.compareTo(BigDecimal.ZERO) <= 0) {
+			throw new InvalidAmountException("Transfer amount should be greater than 0.");
+		}
+		// fail fast on unknown accounts, balances are only checked at execution time
+		accountsService.getAccount(fromAccountId);
+		accountsService.getAccount(toAccountId);
+
+		ScheduledTransfer transfer = new ScheduledTransfer(UUID.randomUUID().toString(), fromAccountId, toAccountId,
+				amountToTransfer, executeAt);
+		if (journal != null) {
+			journal.scheduled(transfer);
+		}
+		synchronized (pending) {
+			pending.put(transfer.getId(), wheel.schedule(transfer, executeAt));
+		}
+		return transfer;
+	}
+
+	/**
+	 * @return true if the transfer was cancelled, false if it is unknown or already being executed
+	 */
+	public boolean cancel(String id) {
+		TimingWheel.Timeout<ScheduledTransfer> timeout = pending.get(id);
+		if (timeout == null || !wheel.cancel(timeout)) {
+			return false;
+		}
+		pending.remove(id, timeout);
+		retrying.remove(id);
+		if (journal != null) {
+			journal.cancelled(id);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the pending transfer, null if it is unknown, cancelled or already executed
+	 */
+	public ScheduledTransfer getScheduledTransfer(String id) {
+		TimingWheel.Timeout<ScheduledTransfer> timeout = pending.get(id);
+		return timeout == null ? null : timeout.getPayload();
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("pending", wheel.size());
+		stats.put("executed", executed.sum());
+		stats.put("failed", failed.sum());
+		stats.put("retried", retried.sum());
+		stats.put("executionLagMillis", executionLag.summary());
+		return stats;
+	}
+
+	private void tick() {
+		try {
+			List<TimingWheel.Timeout<ScheduledTransfer>> due = wheel.advance(System.currentTimeMillis());
+			for (int from = 0; from < due.size(); from += batchSize) {
+				List<TimingWheel.Timeout<ScheduledTransfer>> batch = due.subList(from, Math.min(due.size(),
+						from + batchSize));
+				executor.execute(() -> execute(batch));
+			}
+		} catch (RuntimeException e) {
+			// an exception would cancel the periodic task and silently stop every scheduled transfer
+			log.error("Scheduled transfer tick failed", e);
+		}
+	}
+
+	private void execute(List<TimingWheel.Timeout<ScheduledTransfer>> batch) {
+		for (TimingWheel.Timeout<ScheduledTransfer> timeout : batch) {
+			ScheduledTransfer transfer = timeout.getPayload();
+			if (!retrying.remove(transfer.getId())) {
+				executionLag.record(System.currentTimeMillis() - timeout.getDueMillis());
+			}
+			try {
+				transferScheduler.tryTransfer(TransferLane.BULK, transfer.getFromAccountId(),
+						transfer.getToAccountId(), transfer.getAmount());
+			} catch (ServiceOverloadedException | AccountBusyException e) {
+				// shed by admission control or no bulk slot free, try again shortly rather than dropping a booked transfer
+				retried.increment();
+				retrying.add(transfer.getId());
+				synchronized (pending) {
+					pending.replace(transfer.getId(), timeout,
+							wheel.schedule(transfer, System.currentTimeMillis() + retryDelayMillis));
+				}
+				continue;
+			} catch (RuntimeException e) {
+				failed.increment();
+				log.warn("Scheduled transfer {} failed: {}", transfer.getId(), e.getMessage());
+				complete(transfer, timeout);
+				continue;
+			}
+			complete(transfer, timeout);
+			executed.increment();
+		}
+	}
+
+	/**
+	 * Journals the transfer as done before unregistering it, a replay must not execute it again.
+	 */
+	private void complete(ScheduledTransfer transfer, TimingWheel.Timeout<ScheduledTransfer> timeout) {
+		if (journal != null) {
+			journal.completed(transfer.getId());
+		}
+		synchronized (pending) {
+			pending.remove(transfer.getId(), timeout);
+		}
+	}
+
+	private static ThreadFactory namedThreads(String prefix) {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,185 @@
+package com.db.awmd.challenge.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel (Varghese &amp; Lauck, as used by the Linux kernel timers). Six levels of 64 slots each cover
+ * 64^6 ticks; a timeout is filed in the coarsest level its distance requires and cascaded to finer levels as time
+ * approaches its deadline. Scheduling and cancelling are O(1), advancing costs O(1) per tick plus the timeouts that
+ * cascade or expire, so millions of pending timeouts cost nothing but their nodes while they wait.
+ * <p>
+ * The wheel does not own a thread, the caller drives it through {@link #advance(long)}. All methods are
+ * synchronized on the wheel.
+ */
+public class TimingWheel<T> {
+
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	private static final int LEVELS = 6;
+	private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+	private final long tickMillis;
+	private final long startMillis;
+	private final Timeout<T>[][] slots;
+	// next tick to be processed
+	private long currentTick;
+	private int size;
+
+	public TimingWheel(long tickMillis, long startMillis) {
+		if (tickMillis <= 0) {
+			throw new IllegalArgumentException("Tick duration should be greater than 0.");
+		}
+		this.tickMillis = tickMillis;
+		this.startMillis = startMillis;
+		this.slots = newSlots();
+		for (int level = 0; level < LEVELS; level++) {
+			for (int slot = 0; slot < SLOTS; slot++) {
+				Timeout<T> head = new Timeout<>(null, 0, 0);
+				head.next = head;
+				head.prev = head;
+				slots[level][slot] = head;
+			}
+		}
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <T> Timeout<T>[][] newSlots() {
+		// generic arrays cannot be created, every slot only ever holds timeouts of this wheel's payload type
+		return new Timeout[LEVELS][SLOTS];
+	}
+
+	/**
+	 * Schedules a payload to expire at the given wall clock time. Timeouts already due expire on the next advance.
+	 */
+	public synchronized Timeout<T> schedule(T payload, long dueMillis) {
+		long tick = Math.max(0, (dueMillis - startMillis + tickMillis - 1) / tickMillis);
+		Timeout<T> timeout = new Timeout<>(payload, dueMillis, tick);
+		insert(timeout);
+		size++;
+		return timeout;
+	}
+
+	/**
+	 * @return true if the timeout was pending and is now cancelled, false if it already expired or was cancelled
+	 */
+	public synchronized boolean cancel(Timeout<T> timeout) {
+		if (timeout.prev == null) {
+			return false;
+		}
+		unlink(timeout);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Processes every tick up to the given time.
+	 * @return expired timeouts in tick order, never null
+	 */
+	public synchronized List<Timeout<T>> advance(long nowMillis) {
+		List<Timeout<T>> expired = new ArrayList<>();
+		long targetTick = (nowMillis - startMillis) / tickMillis;
+		while (currentTick <= targetTick) {
+			if (size == 0) {
+				// nothing to cascade or expire, skip the idle ticks altogether
+				currentTick = targetTick + 1;
+				break;
+			}
+			processTick(expired);
+		}
+		return expired;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	private void processTick(List<Timeout<T>> expired) {
+		long tick = currentTick;
+		int index = (int) (tick & SLOT_MASK);
+		if (index == 0) {
+			for (int level = 1; level < LEVELS; level++) {
+				int slot = (int) ((tick >>> (level * SLOT_BITS)) & SLOT_MASK);
+				cascade(slots[level][slot]);
+				if (slot != 0) {
+					break;
+				}
+			}
+		}
+		Timeout<T> head = slots[0][index];
+		while (head.next != head) {
+			Timeout<T> timeout = head.next;
+			unlink(timeout);
+			if (timeout.tick > tick) {
+				// was beyond the range of the wheel when scheduled, file it again
+				insert(timeout);
+				continue;
+			}
+			size--;
+			expired.add(timeout);
+		}
+		currentTick = tick + 1;
+	}
+
+	private void cascade(Timeout<T> head) {
+		while (head.next != head) {
+			Timeout<T> timeout = head.next;
+			unlink(timeout);
+			insert(timeout);
+		}
+	}
+
+	private void insert(Timeout<T> timeout) {
+		long delta = timeout.tick - currentTick;
+		Timeout<T> head;
+		if (delta < SLOTS) {
+			head = slots[0][(int) (Math.max(timeout.tick, currentTick) & SLOT_MASK)];
+		} else {
+			long expires = delta > MAX_DELTA ? currentTick + MAX_DELTA : timeout.tick;
+			long distance = expires - currentTick;
+			int level = 1;
+			while (level < LEVELS - 1 && distance >= 1L << ((level + 1) * SLOT_BITS)) {
+				level++;
+			}
+			head = slots[level][(int) ((expires >>> (level * SLOT_BITS)) & SLOT_MASK)];
+		}
+		timeout.prev = head.prev;
+		timeout.next = head;
+		head.prev.next = timeout;
+		head.prev = timeout;
+	}
+
+	private void unlink(Timeout<T> timeout) {
+		timeout.prev.next = timeout.next;
+		timeout.next.prev = timeout.prev;
+		timeout.prev = null;
+		timeout.next = null;
+	}
+
+	/**
+	 * Handle of a scheduled payload, doubles as the node of its slot list.
+	 */
+	public static final class Timeout<T> {
+
+		private final T payload;
+		private final long dueMillis;
+		private final long tick;
+		private Timeout<T> prev;
+		private Timeout<T> next;
+
+		private Timeout(T payload, long dueMillis, long tick) {
+			this.payload = payload;
+			this.dueMillis = dueMillis;
+			this.tick = tick;
+		}
+
+		public T getPayload() {
+			return payload;
+		}
+
+		public long getDueMillis() {
+			return dueMillis;
+		}
+	}
+}
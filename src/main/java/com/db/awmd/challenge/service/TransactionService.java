@@ -3,11 +3,14 @@ package com.db.awmd.challenge.service;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.InvalidAmountException;
 import com.db.awmd.challenge.exception.LowBalanceException;
+import com.db.awmd.challenge.jfr.TransferStage;
+import com.db.awmd.challenge.jfr.TransferStages;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 /**
  * @author abhijit.patil on 05-01-2018
@@ -20,65 +23,172 @@ public class TransactionService {
 	
 	private static final String SUCCESS = "SUCCESS";
 	
-	@Autowired
-	private AccountsService accountsService;
+	private final AccountsService accountsService;
 	
-	@Autowired
-	private NotificationService notificationService;
+	private final NotificationService notificationService;
+	
+	private final TransferAdmissionLimiter admissionLimiter;
+	
+	private final HotAccountTracker hotAccountTracker;
+	
+	private final List<BalanceChangeListener> balanceChangeListeners;
+	
+	private final TransferStages stages = TransferStages.get();
 	
 	private Object lock = new Object();
 	
+	@Autowired
+	public TransactionService(AccountsService accountsService, NotificationService notificationService,
+	                          TransferAdmissionLimiter admissionLimiter, HotAccountTracker hotAccountTracker,
+	                          List<BalanceChangeListener> balanceChangeListeners) {
+		this.accountsService = accountsService;
+		this.notificationService = notificationService;
+		this.admissionLimiter = admissionLimiter;
+		this.hotAccountTracker = hotAccountTracker;
+		this.balanceChangeListeners = balanceChangeListeners;
+	}
+	
 	/**
 	 * Transfers amount from sender account to receiver account in thread-safe manner
 	 * @param fromAccountId
 	 * @param toAccountId
 	 * @param amountToTransfer
 	 * @return
+	 * @throws com.db.awmd.challenge.exception.ServiceOverloadedException if the transfer is shed by admission control
+	 * @throws com.db.awmd.challenge.exception.AccountBusyException if one of the accounts has too many transfers in
+	 * flight
 	 */
 	public String transfer(String fromAccountId, String toAccountId, BigDecimal amountToTransfer) {
-		log.info("Initiating transfer..thread: " + Thread.currentThread().getName() + "\tfromAccount = " + fromAccountId
-				+ "\ttoAccount = " + toAccountId + "\tamt: " + amountToTransfer);
-		//Req: The amount to transfer should always be a positive number.
-		if (amountToTransfer == null || amountToTransfer.compareTo(new BigDecimal(0)) <= 0) {
-			throw new InvalidAmountException("Transfer amount should be greater than 0.");
+		log.debug("Initiating transfer..fromAccount = {}\ttoAccount = {}\tamt: {}", fromAccountId, toAccountId,
+				amountToTransfer);
+		TransferStage validation = stages.validation();
+		try {
+			//Req: The amount to transfer should always be a positive number.
+			if (amountToTransfer == null || amountToTransfer.compareTo(new BigDecimal(0)) <= 0) {
+				throw new InvalidAmountException("Transfer amount should be greater than 0.");
+			}
+		} finally {
+			validation.finish(fromAccountId, toAccountId, amountToTransfer);
 		}
 		
-		Account fromAccount = accountsService.getAccount(fromAccountId);
-		Account toAccount = accountsService.getAccount(toAccountId);
+		hotAccountTracker.transferRequested(fromAccountId, toAccountId);
 		
-		//Req: should never deadlock, should never result in corrupted account state, and should work efficiently for
-		// multiple transfers happening at the same time
-		Object firstLock = fromAccount.getAccountId().compareTo(toAccount.getAccountId()) > 0 ? fromAccount : toAccount;
-		Object secondLock = fromAccount.getAccountId().compareTo(toAccount.getAccountId()) > 0 ? toAccount :
-				fromAccount;
-		//Acquiring locks in same order to avoid possible deadlock
-		synchronized (firstLock) {
-			synchronized (secondLock) {
-				fromAccount = accountsService.getAccount(fromAccountId);
-				toAccount = accountsService.getAccount(toAccountId);
-				
-				//Req: It should not be possible for an account to end up with negative balance
-				if (fromAccount.getBalance().compareTo(amountToTransfer) < 0) {
-					throw new LowBalanceException("Balance in from account is less than amount to be transferred. Overdraft " +
-							"facility not supported");
-				}
-				fromAccount.setBalance(fromAccount.getBalance().subtract(amountToTransfer));
-				toAccount.setBalance(toAccount.getBalance().add(amountToTransfer));
-				
-				log.info("fromAccount = " + fromAccount.getBalance() + "\ttoAccount = " + toAccount.getBalance
-						() + "\tInt balance = " + fromAccount.getBalance().add(toAccount.getBalance()));
-			}
+		//Shed load before queueing on the account monitors, so that latency stays bounded under overload
+		long admitted = admissionLimiter.acquire(fromAccountId, toAccountId);
+		try {
+			return doTransfer(fromAccountId, toAccountId, amountToTransfer);
+		} finally {
+			admissionLimiter.release(fromAccountId, toAccountId, admitted);
+		}
+	}
+	
+	private String doTransfer(String fromAccountId, String toAccountId, BigDecimal amountToTransfer) {
+		Account fromAccount = getAccount(fromAccountId, fromAccountId, toAccountId, amountToTransfer);
+		Account toAccount = getAccount(toAccountId, fromAccountId, toAccountId, amountToTransfer);
+		
+		while (!transferLocked(fromAccount, toAccount, amountToTransfer)) {
+			//One of the accounts was evicted by the repository while waiting for its monitor, lock the reloaded one
+			fromAccount = getAccount(fromAccountId, fromAccountId, toAccountId, amountToTransfer);
+			toAccount = getAccount(toAccountId, fromAccountId, toAccountId, amountToTransfer);
 		}
 		
 		//Req: Notifications to be sent to sender and receiver with account id and amount transferred
-		notificationService.notifyAboutTransfer(fromAccount, "Amount " + amountToTransfer + " is transferred to " +
-				"account " + toAccountId);
-		notificationService.notifyAboutTransfer(toAccount, "Amount " + amountToTransfer + " is received from " +
-				"account " + fromAccountId);
+		notify(fromAccount, "Amount " + amountToTransfer + " is transferred to account " + toAccountId, fromAccountId,
+				toAccountId, amountToTransfer);
+		notify(toAccount, "Amount " + amountToTransfer + " is received from account " + fromAccountId, fromAccountId,
+				toAccountId, amountToTransfer);
 		
 		return SUCCESS;
 	}
 	
+	private Account getAccount(String accountId, String fromAccountId, String toAccountId, BigDecimal amountToTransfer) {
+		TransferStage lookup = stages.accountLookup(accountId);
+		try {
+			return accountsService.getAccount(accountId);
+		} finally {
+			lookup.finish(fromAccountId, toAccountId, amountToTransfer);
+		}
+	}
+	
+	private void notify(Account account, String description, String fromAccountId, String toAccountId,
+	                    BigDecimal amountToTransfer) {
+		TransferStage notification = stages.notification(account.getAccountId());
+		try {
+			notificationService.notifyAboutTransfer(account, description);
+		} finally {
+			notification.finish(fromAccountId, toAccountId, amountToTransfer);
+		}
+	}
+	
+	/**
+	 * Moves the amount while holding both account monitors.
+	 * @return false if either instance is no longer the one held by the repository, nothing is changed in that case
+	 */
+	private boolean transferLocked(Account fromAccount, Account toAccount, BigDecimal amountToTransfer) {
+		//Req: should never deadlock, should never result in corrupted account state, and should work efficiently for
+		// multiple transfers happening at the same time
+		Account firstLock = fromAccount.getHandle() > toAccount.getHandle() ? fromAccount : toAccount;
+		Account secondLock = firstLock == fromAccount ? toAccount : fromAccount;
+		//Acquiring locks in same order (greater handle first) to avoid possible deadlock
+		long firstLockWait = 0;
+		long secondLockWait = 0;
+		String fromAccountId = fromAccount.getAccountId();
+		String toAccountId = toAccount.getAccountId();
+		TransferStage firstWait = stages.monitorWait(firstLock.getAccountId(), 1);
+		long lockRequested = System.nanoTime();
+		try {
+			synchronized (firstLock) {
+				long firstLockAcquired = System.nanoTime();
+				firstLockWait = firstLockAcquired - lockRequested;
+				firstWait.finish(fromAccountId, toAccountId, amountToTransfer);
+				TransferStage secondWait = stages.monitorWait(secondLock.getAccountId(), 2);
+				synchronized (secondLock) {
+					secondLockWait = System.nanoTime() - firstLockAcquired;
+					secondWait.finish(fromAccountId, toAccountId, amountToTransfer);
+					TransferStage update = stages.balanceUpdate();
+					try {
+						if (accountsService.getAccount(fromAccount.getHandle()) != fromAccount
+								|| accountsService.getAccount(toAccount.getHandle()) != toAccount) {
+							return false;
+						}
+					
+						//Req: It should not be possible for an account to end up with negative balance
+						if (fromAccount.getBalance().compareTo(amountToTransfer) < 0) {
+							throw new LowBalanceException("Balance in from account is less than amount to be transferred. " +
+									"Overdraft facility not supported");
+						}
+						BalanceSnapshot snapshot = accountsService.getActiveSnapshot();
+						if (snapshot != null) {
+							snapshot.preserve(fromAccount);
+							snapshot.preserve(toAccount);
+						}
+						int change = accountsService.beginChange();
+						try {
+							fromAccount.setBalance(fromAccount.getBalance().subtract(amountToTransfer));
+							toAccount.setBalance(toAccount.getBalance().add(amountToTransfer));
+							accountsService.updateAccount(fromAccount);
+							accountsService.updateAccount(toAccount);
+						} finally {
+							accountsService.endChange(change);
+						}
+						for (BalanceChangeListener listener : balanceChangeListeners) {
+							listener.balanceChanged(fromAccount);
+							listener.balanceChanged(toAccount);
+						}
+					} finally {
+						update.finish(fromAccountId, toAccountId, amountToTransfer);
+					}
+					
+					log.debug("fromAccount = {}\ttoAccount = {}", fromAccount.getBalance(), toAccount.getBalance());
+				}
+			}
+		} finally {
+			hotAccountTracker.lockAcquired(firstLock.getAccountId(), firstLockWait);
+			hotAccountTracker.lockAcquired(secondLock.getAccountId(), secondLockWait);
+		}
+		return true;
+	}
+	
 //	public String transfer1(String fromAccountId, String toAccountId, BigDecimal amountToTransfer) {
 //		log.info("Initiating transfer..thread: " + Thread.currentThread().getName() + "\tfromAccount = " + fromAccountId
 //				+ "\ttoAccount = " + toAccountId + "\tamt: " + amountToTransfer);
@@ -0,0 +1,217 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.exception.AccountBusyException;
+import com.db.awmd.challenge.exception.ServiceOverloadedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control in front of {@link TransactionService#transfer}. Keeps a concurrency limit that adapts to the
+ * observed transfer latency (gradient style: the limit shrinks when the short term latency drifts above the long term
+ * baseline and grows while latency stays flat) and rejects anything above that limit immediately instead of letting it
+ * queue on the account monitors. Optionally caps the number of in-flight transfers touching a single account, so one
+ * hot account cannot take the whole limit for itself.
+ */
+@Component
+@Slf4j
+public class TransferAdmissionLimiter {
+
+	private static final double TOLERANCE = 1.5;
+	private static final double SMOOTHING = 0.2;
+
+	private final boolean enabled;
+	private final int minLimit;
+	private final int maxLimit;
+	private final int perAccountLimit;
+	private final long windowNanos;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final ConcurrentMap<String, Integer> inFlightPerAccount = new ConcurrentHashMap<>();
+	private volatile int limit;
+
+	// latency samples of the current window
+	private final LongAdder windowLatencyNanos = new LongAdder();
+	private final LongAdder windowSamples = new LongAdder();
+	private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+	private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+	private final AtomicBoolean updating = new AtomicBoolean();
+	private double longLatencyNanos;
+	private double estimatedLimit;
+
+	private final LongAdder rejectedOverload = new LongAdder();
+	private final LongAdder rejectedAccountBusy = new LongAdder();
+
+	@Autowired
+	public TransferAdmissionLimiter(@Value("${transfer.admission.enabled:true}") boolean enabled,
+	                                @Value("${transfer.admission.initial-limit:64}") int initialLimit,
+	                                @Value("${transfer.admission.min-limit:8}") int minLimit,
+	                                @Value("${transfer.admission.max-limit:1024}") int maxLimit,
+	                                @Value("${transfer.admission.per-account-limit:0}") int perAccountLimit,
+	                                @Value("${transfer.admission.window-ms:100}") long windowMs) {
+		this.enabled = enabled;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.perAccountLimit = perAccountLimit;
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		this.estimatedLimit = this.limit;
+	}
+
+	/**
+	 * Creates a limiter that admits everything, for services built outside of the application context.
+	 */
+	public static TransferAdmissionLimiter unlimited() {
+		return new TransferAdmissionLimiter(false, Integer.MAX_VALUE, 1, Integer.MAX_VALUE, 0, 100);
+	}
+
+	/**
+	 * Admits a transfer or rejects it right away.
+	 * @param fromAccountId
+	 * @param toAccountId
+	 * @return start timestamp to be handed back to {@link #release}
+	 * @throws ServiceOverloadedException when the global concurrency limit is reached
+	 * @throws AccountBusyException when one of the accounts reached its in-flight cap
+	 */
+	public long acquire(String fromAccountId, String toAccountId) {
+		if (!enabled) {
+			return System.nanoTime();
+		}
+		int current;
+		do {
+			current = inFlight.get();
+			if (current >= limit) {
+				rejectedOverload.increment();
+				throw new ServiceOverloadedException("Too many transfers in progress, please retry later");
+			}
+		} while (!inFlight.compareAndSet(current, current + 1));
+		if (current + 1 > windowMaxInFlight.get()) {
+			windowMaxInFlight.accumulateAndGet(current + 1, Math::max);
+		}
+
+		if (perAccountLimit > 0) {
+			if (!enterAccount(fromAccountId)) {
+				inFlight.decrementAndGet();
+				rejectedAccountBusy.increment();
+				throw new AccountBusyException("Too many transfers in progress for account " + fromAccountId);
+			}
+			if (!enterAccount(toAccountId)) {
+				leaveAccount(fromAccountId);
+				inFlight.decrementAndGet();
+				rejectedAccountBusy.increment();
+				throw new AccountBusyException("Too many transfers in progress for account " + toAccountId);
+			}
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Releases a transfer admitted by {@link #acquire} and feeds its latency into the limit.
+	 */
+	public void release(String fromAccountId, String toAccountId, long startedNanos) {
+		if (!enabled) {
+			return;
+		}
+		long now = System.nanoTime();
+		if (perAccountLimit > 0) {
+			leaveAccount(fromAccountId);
+			leaveAccount(toAccountId);
+		}
+		inFlight.decrementAndGet();
+
+		windowLatencyNanos.add(now - startedNanos);
+		windowSamples.increment();
+		long start = windowStart.get();
+		if (now - start >= windowNanos && updating.compareAndSet(false, true)) {
+			try {
+				if (windowStart.compareAndSet(start, now)) {
+					updateLimit();
+				}
+			} finally {
+				updating.set(false);
+			}
+		}
+	}
+
+	private boolean enterAccount(String accountId) {
+		boolean[] admitted = new boolean[1];
+		inFlightPerAccount.compute(accountId, (id, count) -> {
+			int current = count == null ? 0 : count;
+			if (current >= perAccountLimit) {
+				return count;
+			}
+			admitted[0] = true;
+			return current + 1;
+		});
+		return admitted[0];
+	}
+
+	private void leaveAccount(String accountId) {
+		inFlightPerAccount.computeIfPresent(accountId, (id, count) -> count <= 1 ? null : count - 1);
+	}
+
+	/**
+	 * Recomputes the limit from the window that just closed. Only ever called by one thread at a time.
+	 */
+	private void updateLimit() {
+		long samples = windowSamples.sumThenReset();
+		long latency = windowLatencyNanos.sumThenReset();
+		int maxInFlight = windowMaxInFlight.getAndSet(0);
+		if (samples == 0) {
+			return;
+		}
+		double shortLatency = (double) latency / samples;
+		if (longLatencyNanos == 0) {
+			longLatencyNanos = shortLatency;
+		} else {
+			longLatencyNanos = longLatencyNanos * 0.95 + shortLatency * 0.05;
+			// let the baseline follow quickly when load drops, so that a past overload does not inflate it forever
+			if (longLatencyNanos > 2 * shortLatency) {
+				longLatencyNanos = longLatencyNanos * 0.9 + shortLatency * 0.1;
+			}
+		}
+
+		// do not grow the limit while the service is not even using half of it
+		if (maxInFlight < estimatedLimit / 2 && shortLatency <= longLatencyNanos * TOLERANCE) {
+			return;
+		}
+
+		double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatencyNanos / shortLatency));
+		double queueSize = Math.sqrt(estimatedLimit);
+		double newLimit = estimatedLimit * gradient + queueSize;
+		estimatedLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+		estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+
+		int rounded = (int) estimatedLimit;
+		if (rounded != limit) {
+			log.debug("Transfer concurrency limit {} -> {} (latency short {}us, long {}us)", limit, rounded,
+					(long) shortLatency / 1000, (long) longLatencyNanos / 1000);
+			limit = rounded;
+		}
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public long getRejectedOverload() {
+		return rejectedOverload.sum();
+	}
+
+	public long getRejectedAccountBusy() {
+		return rejectedAccountBusy.sum();
+	}
+}
@@ -0,0 +1,17 @@
+package com.db.awmd.challenge.service;
+
+/**
+ * Priority lanes transfers are scheduled in, see {@link TransferScheduler}.
+ */
+public enum TransferLane {
+	
+	/**
+	 * Customer-facing transfers, kept at low latency.
+	 */
+	INTERACTIVE,
+	
+	/**
+	 * Batch and settlement work, soaks up the capacity interactive transfers leave.
+	 */
+	BULK
+}
@@ -0,0 +1,304 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.exception.ServiceOverloadedException;
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Priority lanes in front of {@link TransactionService#transfer}, so bulk work cannot crowd out interactive transfers.
+ * <p>
+ * A transfer runs on its caller's thread once its lane is granted a slot. Slots are limited overall (by the configured
+ * maximum and by the admission limiter's current limit, whichever is lower) and per lane. While slots are free and its
+ * lane has no backlog a transfer runs right away; otherwise it queues in its lane, and every freed slot goes to the
+ * backlogged lane that is furthest behind its weighted share (stride scheduling: each grant advances the lane's pass
+ * by the inverse of its weight, the lane with the lowest pass goes next). An idle lane does not bank credit, it
+ * rejoins at the pass of the last grant. Slots gained by a growing admission limit are handed out on the next
+ * release, arrival or queue timeout, whichever comes first. Queues are bounded and waiting is limited in time, both
+ * reject with a {@link ServiceOverloadedException}, as does interrupting a queued caller. Queued callers park their
+ * own thread, so queue limits are kept well below the server's request threads; background work uses
+ * {@link #tryTransfer}, which never queues.
+ */
+@Service
+public class TransferScheduler {
+
+	private static final long STRIDE_SCALE = 1L << 20;
+
+	private final TransactionService transactionService;
+
+	private final TransferAdmissionLimiter admissionLimiter;
+
+	private final int maxConcurrent;
+
+	private final long queueTimeoutNanos;
+
+	private final Lane[] lanes = new Lane[TransferLane.values().length];
+
+	// guarded by this
+	private int active;
+
+	// pass of the latest grant, guarded by this
+	private long virtualTime;
+
+	@Autowired
+	public TransferScheduler(TransactionService transactionService, TransferAdmissionLimiter admissionLimiter,
+	                         @Value("${transfer.lanes.max-concurrent:64}") int maxConcurrent,
+	                         @Value("${transfer.lanes.queue-timeout-ms:2000}") long queueTimeoutMillis,
+	                         @Value("${transfer.lanes.interactive.weight:8}") int interactiveWeight,
+	                         @Value("${transfer.lanes.interactive.max-concurrent:64}") int interactiveMaxConcurrent,
+	                         @Value("${transfer.lanes.interactive.max-queued:64}") int interactiveMaxQueued,
+	                         @Value("${transfer.lanes.bulk.weight:1}") int bulkWeight,
+	                         @Value("${transfer.lanes.bulk.max-concurrent:16}") int bulkMaxConcurrent,
+	                         @Value("${transfer.lanes.bulk.max-queued:32}") int bulkMaxQueued) {
+		this.transactionService = transactionService;
+		this.admissionLimiter = admissionLimiter;
+		this.maxConcurrent = maxConcurrent;
+		this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+		lanes[TransferLane.INTERACTIVE.ordinal()] = new Lane(TransferLane.INTERACTIVE, interactiveWeight,
+				interactiveMaxConcurrent, interactiveMaxQueued);
+		lanes[TransferLane.BULK.ordinal()] = new Lane(TransferLane.BULK, bulkWeight, bulkMaxConcurrent, bulkMaxQueued);
+	}
+
+	/**
+	 * @return a scheduler with the same limits and lanes as this one in front of another transaction service, for the
+	 * warm-up
+	 */
+	TransferScheduler withTransactionService(TransactionService transactionService) {
+		Lane interactive = lanes[TransferLane.INTERACTIVE.ordinal()];
+		Lane bulk = lanes[TransferLane.BULK.ordinal()];
+		return new TransferScheduler(transactionService, admissionLimiter, maxConcurrent,
+				TimeUnit.NANOSECONDS.toMillis(queueTimeoutNanos), interactive.weight, interactive.maxConcurrent,
+				interactive.maxQueued, bulk.weight, bulk.maxConcurrent, bulk.maxQueued);
+	}
+
+	/**
+	 * {@link TransactionService#transfer} in the given lane.
+	 * @throws ServiceOverloadedException if the lane's queue is full or the transfer waited too long for a slot
+	 */
+	public String transfer(TransferLane lane, String fromAccountId, String toAccountId, BigDecimal amountToTransfer) {
+		Lane scheduled = lanes[lane.ordinal()];
+		acquire(scheduled);
+		try {
+			return transactionService.transfer(fromAccountId, toAccountId, amountToTransfer);
+		} finally {
+			release(scheduled);
+		}
+	}
+
+	/**
+	 * {@link TransactionService#transfer} in the given lane, if it can start right away.
+	 * @throws ServiceOverloadedException if no slot is free or the lane has queued transfers, the caller is expected
+	 *                                    to try again later
+	 */
+	public String tryTransfer(TransferLane lane, String fromAccountId, String toAccountId,
+	                          BigDecimal amountToTransfer) {
+		Lane scheduled = lanes[lane.ordinal()];
+		synchronized (this) {
+			dispatch();
+			if (!tryGrant(scheduled)) {
+				scheduled.rejected.increment();
+				throw new ServiceOverloadedException("No slot free for " + lane.name().toLowerCase()
+						+ " transfer, try again later");
+			}
+		}
+		scheduled.queueWait.record(0);
+		try {
+			return transactionService.transfer(fromAccountId, toAccountId, amountToTransfer);
+		} finally {
+			release(scheduled);
+		}
+	}
+
+	/**
+	 * @return per lane: weight, limits, running and queued transfers, grants, rejections and time spent queued
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		synchronized (this) {
+			stats.put("maxConcurrent", capacity());
+			stats.put("active", active);
+		}
+		for (Lane lane : lanes) {
+			Map<String, Object> laneStats = new LinkedHashMap<>();
+			synchronized (this) {
+				laneStats.put("weight", lane.weight);
+				laneStats.put("maxConcurrent", lane.maxConcurrent);
+				laneStats.put("active", lane.active);
+				laneStats.put("queued", lane.waiting.size());
+			}
+			laneStats.put("granted", lane.granted.sum());
+			laneStats.put("queuedTotal", lane.queued.sum());
+			laneStats.put("rejected", lane.rejected.sum());
+			laneStats.put("timedOut", lane.timedOut.sum());
+			laneStats.put("queueWaitMicros", lane.queueWait.summary());
+			stats.put(lane.lane.name().toLowerCase(), laneStats);
+		}
+		return stats;
+	}
+
+	private void acquire(Lane lane) {
+		Waiter waiter = null;
+		synchronized (this) {
+			// the admission limit may have grown since the last release, the queued transfers get the new slots first
+			dispatch();
+			if (!tryGrant(lane)) {
+				if (lane.waiting.size() >= lane.maxQueued) {
+					lane.rejected.increment();
+					throw new ServiceOverloadedException("Too many " + lane.lane.name().toLowerCase()
+							+ " transfers queued, try again later");
+				}
+				if (lane.waiting.isEmpty()) {
+					lane.pass = Math.max(lane.pass, virtualTime);
+				}
+				waiter = new Waiter(Thread.currentThread());
+				lane.waiting.add(waiter);
+				lane.queued.increment();
+			}
+		}
+		if (waiter == null) {
+			lane.queueWait.record(0);
+			return;
+		}
+
+		long queuedAt = System.nanoTime();
+		long deadline = queuedAt + queueTimeoutNanos;
+		while (!waiter.granted) {
+			long remaining = deadline - System.nanoTime();
+			// parking returns right away while interrupted, give up the place and leave the flag set for the caller
+			boolean interrupted = Thread.currentThread().isInterrupted();
+			if (remaining <= 0 || interrupted) {
+				synchronized (this) {
+					// the admission limit may have grown without a release handing out the new slots
+					dispatch();
+					if (!waiter.granted) {
+						lane.waiting.remove(waiter);
+						if (interrupted) {
+							throw new ServiceOverloadedException("Interrupted waiting to schedule "
+									+ lane.lane.name().toLowerCase() + " transfer");
+						}
+						lane.timedOut.increment();
+						throw new ServiceOverloadedException("Timed out waiting to schedule "
+								+ lane.lane.name().toLowerCase() + " transfer, try again later");
+					}
+				}
+				break;
+			}
+			LockSupport.parkNanos(this, remaining);
+		}
+		lane.queueWait.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - queuedAt));
+	}
+
+	private void release(Lane lane) {
+		synchronized (this) {
+			active--;
+			lane.active--;
+			dispatch();
+		}
+	}
+
+	/**
+	 * Hands free slots to the queued transfers of the lanes furthest behind their share. Called holding this.
+	 */
+	private void dispatch() {
+		while (active < capacity()) {
+			Lane next = null;
+			for (Lane lane : lanes) {
+				if (!lane.waiting.isEmpty() && lane.active < lane.maxConcurrent
+						&& (next == null || lane.pass < next.pass)) {
+					next = lane;
+				}
+			}
+			if (next == null) {
+				return;
+			}
+			Waiter waiter = next.waiting.poll();
+			grant(next);
+			waiter.granted = true;
+			LockSupport.unpark(waiter.thread);
+		}
+	}
+
+	/**
+	 * Grants a slot if one is free and the lane has no backlog. Called holding this.
+	 */
+	private boolean tryGrant(Lane lane) {
+		if (lane.waiting.isEmpty() && active < capacity() && lane.active < lane.maxConcurrent) {
+			grant(lane);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Called holding this.
+	 */
+	private void grant(Lane lane) {
+		active++;
+		lane.active++;
+		virtualTime = lane.pass;
+		lane.pass += lane.stride;
+		lane.granted.increment();
+	}
+
+	private int capacity() {
+		return Math.min(maxConcurrent, admissionLimiter.getLimit());
+	}
+
+	private static final class Lane {
+
+		private final TransferLane lane;
+
+		private final int weight;
+
+		private final long stride;
+
+		private final int maxConcurrent;
+
+		private final int maxQueued;
+
+		// guarded by the scheduler
+		private final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+
+		private int active;
+
+		private long pass;
+
+		private final LongAdder granted = new LongAdder();
+
+		private final LongAdder queued = new LongAdder();
+
+		private final LongAdder rejected = new LongAdder();
+
+		private final LongAdder timedOut = new LongAdder();
+
+		private final LatencyHistogram queueWait = new LatencyHistogram();
+
+		Lane(TransferLane lane, int weight, int maxConcurrent, int maxQueued) {
+			this.lane = lane;
+			this.weight = Math.max(1, weight);
+			this.stride = STRIDE_SCALE / this.weight;
+			this.maxConcurrent = maxConcurrent;
+			this.maxQueued = maxQueued;
+		}
+	}
+
+	private static final class Waiter {
+
+		private final Thread thread;
+
+		private volatile boolean granted;
+
+		Waiter(Thread thread) {
+			this.thread = thread;
+		}
+	}
+}
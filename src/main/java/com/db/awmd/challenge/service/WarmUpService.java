@@ -0,0 +1,235 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.ResourceNotFoundException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.web.AccountsController;
+import com.db.awmd.challenge.web.TransactionController;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional JIT warm-up, run once the application context is refreshed and before the embedded server starts accepting
+ * connections, so the application only becomes reachable (ready) with the hot paths already compiled.
+ * <p>
+ * Transfers, account lookups and account creation run in rounds through the controllers, from the request body JSON
+ * to the response, until the JIT compiler has been idle for a few rounds in a row or the iteration/time budget runs
+ * out. They go to throwaway accounts in a throwaway in-memory repository, but through services configured like the
+ * production ones: the production admission limiter, hot account tracker and balance change listeners (an account
+ * response cache of their own standing in for the production one), and the production lane limits, so the compiler
+ * sees the branches real traffic takes. The hot account tracker is cleared afterwards, application accounts are never
+ * touched.
+ */
+@Component
+@Slf4j
+public class WarmUpService {
+
+	private static final int ACCOUNTS = 128;
+
+	private static final BigDecimal INITIAL_BALANCE = new BigDecimal(1_000_000);
+
+	private final ObjectMapper objectMapper;
+
+	private final TransferAdmissionLimiter admissionLimiter;
+
+	private final HotAccountTracker hotAccountTracker;
+
+	private final List<BalanceChangeListener> balanceChangeListeners;
+
+	private final TransferScheduler transferScheduler;
+
+	private final boolean enabled;
+
+	private final int roundIterations;
+
+	private final int stableRounds;
+
+	private final long stableCompileMillis;
+
+	private final long maxIterations;
+
+	private final long maxDurationMillis;
+
+	private volatile boolean ready;
+
+	private volatile Map<String, Object> report;
+
+	/**
+	 * Keeps the results of the warm-up work observable, so the compiler cannot drop it as dead code.
+	 */
+	private volatile int sink;
+
+	@Autowired
+	public WarmUpService(ObjectMapper objectMapper, TransferAdmissionLimiter admissionLimiter,
+	                     HotAccountTracker hotAccountTracker, List<BalanceChangeListener> balanceChangeListeners,
+	                     TransferScheduler transferScheduler,
+	                     @Value("${startup.warm-up.enabled:false}") boolean enabled,
+	                     @Value("${startup.warm-up.round-iterations:5000}") int roundIterations,
+	                     @Value("${startup.warm-up.stable-rounds:3}") int stableRounds,
+	                     @Value("${startup.warm-up.stable-compile-millis:2}") long stableCompileMillis,
+	                     @Value("${startup.warm-up.max-iterations:1000000}") long maxIterations,
+	                     @Value("${startup.warm-up.max-duration-ms:60000}") long maxDurationMillis) {
+		this.objectMapper = objectMapper;
+		this.admissionLimiter = admissionLimiter;
+		this.hotAccountTracker = hotAccountTracker;
+		this.balanceChangeListeners = balanceChangeListeners;
+		this.transferScheduler = transferScheduler;
+		this.enabled = enabled;
+		this.roundIterations = roundIterations;
+		this.stableRounds = stableRounds;
+		this.stableCompileMillis = stableCompileMillis;
+		this.maxIterations = maxIterations;
+		this.maxDurationMillis = maxDurationMillis;
+		Map<String, Object> disabled = new LinkedHashMap<>();
+		disabled.put("enabled", false);
+		this.report = disabled;
+	}
+
+	@EventListener(ContextRefreshedEvent.class)
+	public void onContextRefreshed() {
+		if (ready) {
+			return;
+		}
+		if (enabled) {
+			report = warmUp();
+			log.info("JIT warm-up finished: {}", report);
+		}
+		ready = true;
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * @return whether the warm-up ran and, if so, its iterations, duration, compilation time and why it stopped
+	 */
+	public Map<String, Object> getReport() {
+		Map<String, Object> current = new LinkedHashMap<>(report);
+		current.put("ready", ready);
+		return current;
+	}
+
+	Map<String, Object> warmUp() {
+		log.info("Starting JIT warm-up");
+		AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		//Notifications are not part of the warm-up, the real one would log every warm-up transfer
+		NotificationService notificationService = (account, transferDescription) -> sink += transferDescription.length();
+		AccountResponseCache accountResponseCache = new AccountResponseCache(accountsService, objectMapper, ACCOUNTS);
+		List<BalanceChangeListener> listeners = new ArrayList<>(balanceChangeListeners.size());
+		for (BalanceChangeListener listener : balanceChangeListeners) {
+			listeners.add(listener instanceof AccountResponseCache ? accountResponseCache : listener);
+		}
+		TransactionService transactionService = new TransactionService(accountsService, notificationService,
+				admissionLimiter, hotAccountTracker, listeners);
+		TransactionController transactionController = new TransactionController(
+				transferScheduler.withTransactionService(transactionService));
+		AccountsController accountsController = new AccountsController(accountsService, accountResponseCache);
+		String[] accountIds = new String[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountIds[i] = "warm-up-" + i;
+			accountsService.createAccount(new Account(accountIds[i], INITIAL_BALANCE));
+		}
+
+		CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+		boolean monitored = compiler != null && compiler.isCompilationTimeMonitoringSupported();
+		long started = System.nanoTime();
+		long compileStarted = monitored ? compiler.getTotalCompilationTime() : 0;
+		long lastCompileTime = compileStarted;
+		long iterations = 0;
+		int rounds = 0;
+		int quietRounds = 0;
+		String stoppedBecause;
+		while (true) {
+			for (int i = 0; i < roundIterations; i++) {
+				iterate(transactionController, accountsController, accountIds, iterations + i);
+			}
+			iterations += roundIterations;
+			rounds++;
+			if (monitored) {
+				long compileTime = compiler.getTotalCompilationTime();
+				quietRounds = compileTime - lastCompileTime <= stableCompileMillis ? quietRounds + 1 : 0;
+				lastCompileTime = compileTime;
+				if (quietRounds >= stableRounds) {
+					stoppedBecause = "compilation stable";
+					break;
+				}
+			}
+			if (iterations >= maxIterations) {
+				stoppedBecause = "max iterations";
+				break;
+			}
+			if (System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(maxDurationMillis)) {
+				stoppedBecause = "max duration";
+				break;
+			}
+		}
+		hotAccountTracker.clear();
+
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("enabled", true);
+		result.put("iterations", iterations);
+		result.put("rounds", rounds);
+		result.put("durationMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+		if (monitored) {
+			result.put("compilationMillis", lastCompileTime - compileStarted);
+		}
+		result.put("stoppedBecause", stoppedBecause);
+		return result;
+	}
+
+	/**
+	 * One transfer, one lookup and one account creation from its JSON, with the occasional declined transfer, bulk
+	 * transfer, unknown account and duplicate account so the error paths are compiled too.
+	 */
+	private void iterate(TransactionController transactionController, AccountsController accountsController,
+	                     String[] accountIds, long iteration) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int from = random.nextInt(accountIds.length);
+		int to = (from + 1 + random.nextInt(accountIds.length - 1)) % accountIds.length;
+		int dice = random.nextInt(64);
+		// request parameters arrive as text
+		String amount = dice == 0 ? INITIAL_BALANCE.multiply(BigDecimal.TEN).toPlainString() : BigDecimal.valueOf(1
+				+ random.nextInt(10_000), 2).toPlainString();
+		ResponseEntity<Object> transferred = dice == 1
+				? transactionController.bulkTransfer(accountIds[from], accountIds[to], new BigDecimal(amount))
+				: transactionController.transfer(accountIds[from], accountIds[to], new BigDecimal(amount), null);
+		sink += transferred.getStatusCode().value();
+		try {
+			ResponseEntity<byte[]> account = accountsController.getAccount(dice == 2 ? "warm-up-missing"
+					: accountIds[random.nextInt(accountIds.length)]);
+			byte[] json = account.getBody();
+			sink += json.length;
+			if (dice == 3 || dice == 4) {
+				// request body of a new account, or of an existing one that is declined as a duplicate
+				Account body = objectMapper.readValue(json, Account.class);
+				if (dice == 3) {
+					body = new Account("warm-up-new-" + iteration, body.getBalance());
+				}
+				Account created = objectMapper.readValue(objectMapper.writeValueAsBytes(body), Account.class);
+				sink += accountsController.createAccount(created).getStatusCode().value();
+			}
+		} catch (ResourceNotFoundException e) {
+			sink++;
+		} catch (IOException e) {
+			throw new IllegalStateException("Account JSON round trip failed during warm-up", e);
+		}
+	}
+}
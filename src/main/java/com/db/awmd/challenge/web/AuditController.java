@@ -0,0 +1,54 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.exception.AuditInProgressException;
+import com.db.awmd.challenge.service.AuditService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Reconciliation audit of all account balances against the expected total.
+ */
+@RestController
+@RequestMapping("/v1/audit")
+@Slf4j
+public class AuditController {
+	
+	private final AuditService auditService;
+	
+	@Autowired
+	public AuditController(AuditService auditService) {
+		this.auditService = auditService;
+	}
+	
+	/**
+	 * Runs an audit and returns its report; without an expected total the money issued to the accounts is expected.
+	 */
+	@PostMapping
+	public ResponseEntity<Object> audit(@RequestParam(required = false) BigDecimal expectedTotal) {
+		log.info("Auditing accounts, expected total {}", expectedTotal);
+		try {
+			return new ResponseEntity<>(auditService.audit(expectedTotal), HttpStatus.OK);
+		} catch (AuditInProgressException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+		}
+	}
+	
+	@GetMapping
+	public ResponseEntity<Object> getLastReport() {
+		Map<String, Object> report = auditService.getLastReport();
+		if (report == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(report, HttpStatus.OK);
+	}
+}
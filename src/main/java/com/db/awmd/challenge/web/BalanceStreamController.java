@@ -0,0 +1,66 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.exception.InvalidSubscriptionException;
+import com.db.awmd.challenge.exception.ResourceNotFoundException;
+import com.db.awmd.challenge.exception.ServiceOverloadedException;
+import com.db.awmd.challenge.service.BalanceStreamService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Server-sent event stream of account balances, as an alternative to polling {@code GET /v1/accounts/{accountId}}.
+ */
+@RestController
+@RequestMapping("/v1/balances")
+@Slf4j
+public class BalanceStreamController {
+	
+	private final BalanceStreamService balanceStreamService;
+	
+	@Autowired
+	public BalanceStreamController(BalanceStreamService balanceStreamService) {
+		this.balanceStreamService = balanceStreamService;
+	}
+	
+	/**
+	 * Streams "balance" events with the account id, balance and a sequence number (also the event id) for the given
+	 * comma separated accounts: the current balances first, then the latest balance after every transfer.
+	 */
+	@GetMapping(path = "/stream")
+	public SseEmitter streamBalances(@RequestParam List<String> accountIds) {
+		log.info("Opening balance stream for accounts {}", accountIds);
+		return balanceStreamService.subscribe(accountIds);
+	}
+	
+	@GetMapping(path = "/stream/stats")
+	public Map<String, Object> getStats() {
+		return balanceStreamService.getStats();
+	}
+	
+	//The stream itself is the response body, so errors can only be mapped by handlers
+	@ExceptionHandler(ResourceNotFoundException.class)
+	public ResponseEntity<Object> accountNotFound(ResourceNotFoundException e) {
+		return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+	}
+	
+	@ExceptionHandler(InvalidSubscriptionException.class)
+	public ResponseEntity<Object> invalidSubscription(InvalidSubscriptionException e) {
+		return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+	}
+	
+	@ExceptionHandler(ServiceOverloadedException.class)
+	public ResponseEntity<Object> overloaded(ServiceOverloadedException e) {
+		return new ResponseEntity<>(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+	}
+}
@@ -0,0 +1,72 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.service.AccountResponseCache;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.HotAccountTracker;
+import com.db.awmd.challenge.service.WarmUpService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Runtime diagnostics of the transfer path.
+ */
+@RestController
+@RequestMapping("/v1/diagnostics")
+@Slf4j
+public class DiagnosticsController {
+	
+	private final HotAccountTracker hotAccountTracker;
+	
+	private final WarmUpService warmUpService;
+	
+	private final AccountResponseCache accountResponseCache;
+	
+	private final AccountsService accountsService;
+	
+	@Autowired
+	public DiagnosticsController(HotAccountTracker hotAccountTracker, WarmUpService warmUpService,
+	                             AccountResponseCache accountResponseCache, AccountsService accountsService) {
+		this.hotAccountTracker = hotAccountTracker;
+		this.warmUpService = warmUpService;
+		this.accountResponseCache = accountResponseCache;
+		this.accountsService = accountsService;
+	}
+	
+	/**
+	 * Most transferred and most lock-contended accounts over the tracking window, with estimated counts.
+	 */
+	@GetMapping(path = "/hot-accounts")
+	public Map<String, Object> getHotAccounts(@RequestParam(defaultValue = "10") int limit) {
+		return hotAccountTracker.getHotAccounts(limit);
+	}
+	
+	/**
+	 * Outcome of the startup JIT warm-up: iterations, duration, compilation time and why it stopped.
+	 */
+	@GetMapping(path = "/warm-up")
+	public Map<String, Object> getWarmUp() {
+		return warmUpService.getReport();
+	}
+	
+	/**
+	 * Size, hits, misses and invalidations of the cached account responses.
+	 */
+	@GetMapping(path = "/account-response-cache")
+	public Map<String, Object> getAccountResponseCache() {
+		return accountResponseCache.getStats();
+	}
+	
+	/**
+	 * Hot and cold account counts, cold storage size, promotions and their latency.
+	 */
+	@GetMapping(path = "/account-tiers")
+	public Map<String, Object> getAccountTiers() {
+		return accountsService.getAccountsRepository().getTierStats();
+	}
+}
@@ -0,0 +1,126 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Hold;
+import com.db.awmd.challenge.domain.HoldSettlement;
+import com.db.awmd.challenge.exception.InvalidAmountException;
+import com.db.awmd.challenge.exception.LowBalanceException;
+import com.db.awmd.challenge.exception.ResourceNotFoundException;
+import com.db.awmd.challenge.service.HoldService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authorization holds: reserve funds now, settle or release them later.
+ */
+@RestController
+@RequestMapping("/v1/holds")
+@Slf4j
+public class HoldController {
+	
+	private final HoldService holdService;
+	
+	@Autowired
+	public HoldController(HoldService holdService) {
+		this.holdService = holdService;
+	}
+	
+	@PostMapping
+	public ResponseEntity<Object> authorize(@RequestParam String accountId, @RequestParam BigDecimal amount,
+	                                        @RequestParam(defaultValue = "0") long ttlSeconds) {
+		log.debug("Holding amount {} on account {}", amount, accountId);
+		try {
+			Hold hold = holdService.authorize(accountId, amount, TimeUnit.SECONDS.toMillis(ttlSeconds));
+			return new ResponseEntity<>(hold, HttpStatus.CREATED);
+		} catch (ResourceNotFoundException | InvalidAmountException | LowBalanceException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
+	
+	@GetMapping(path = "/{holdId}")
+	public ResponseEntity<Object> getHold(@PathVariable String holdId) {
+		Hold hold = holdService.getHold(holdId);
+		if (hold == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(hold, HttpStatus.OK);
+	}
+	
+	/**
+	 * Settles the hold to the receiving account; without an amount the whole hold, otherwise the rest is released.
+	 */
+	@PostMapping(path = "/{holdId}/settle")
+	public ResponseEntity<Object> settle(@PathVariable String holdId, @RequestParam String toAccountId,
+	                                     @RequestParam(required = false) BigDecimal amount) {
+		log.debug("Settling hold {} to account {}", holdId, toAccountId);
+		try {
+			holdService.settle(new HoldSettlement(holdId, toAccountId, amount));
+		} catch (ResourceNotFoundException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+		} catch (InvalidAmountException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+	
+	@PostMapping(path = "/{holdId}/release")
+	public ResponseEntity<Object> release(@PathVariable String holdId) {
+		log.debug("Releasing hold {}", holdId);
+		try {
+			holdService.release(holdId);
+		} catch (ResourceNotFoundException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+	
+	/**
+	 * Settles a batch of holds. The whole batch is rejected if a settlement lacks its hold id or receiving account, or if
+	 * a hold is named more than once.
+	 * @return per hold id, SETTLED or the reason it was not settled
+	 */
+	@PostMapping(path = "/settle", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> settleAll(@RequestBody List<HoldSettlement> settlements) {
+		for (int i = 0; i < settlements.size(); i++) {
+			HoldSettlement settlement = settlements.get(i);
+			if (settlement == null || settlement.getHoldId() == null || settlement.getToAccountId() == null) {
+				return new ResponseEntity<>("Settlement " + i + " needs a holdId and a toAccountId",
+						HttpStatus.BAD_REQUEST);
+			}
+		}
+		try {
+			return new ResponseEntity<>(holdService.settleAll(settlements), HttpStatus.OK);
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
+	
+	/**
+	 * Releases a batch of holds. The whole batch is rejected if it contains a null hold id or a hold id more than once.
+	 * @return per hold id, RELEASED or the reason it was not released
+	 */
+	@PostMapping(path = "/release", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> releaseAll(@RequestBody List<String> holdIds) {
+		if (holdIds.contains(null)) {
+			return new ResponseEntity<>("Hold ids must not be null", HttpStatus.BAD_REQUEST);
+		}
+		try {
+			return new ResponseEntity<>(holdService.releaseAll(holdIds), HttpStatus.OK);
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
+	
+	@GetMapping(path = "/stats")
+	public Map<String, Object> getStats() {
+		return holdService.getStats();
+	}
+}
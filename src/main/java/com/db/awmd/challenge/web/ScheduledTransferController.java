@@ -0,0 +1,67 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.exception.InvalidAmountException;
+import com.db.awmd.challenge.exception.ResourceNotFoundException;
+import com.db.awmd.challenge.service.ScheduledTransferService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Booking, lookup and cancellation of future-dated transfers.
+ */
+@RestController
+@RequestMapping("/v1/transactions/scheduled")
+@Slf4j
+public class ScheduledTransferController {
+	
+	private final ScheduledTransferService scheduledTransferService;
+	
+	@Autowired
+	public ScheduledTransferController(ScheduledTransferService scheduledTransferService) {
+		this.scheduledTransferService = scheduledTransferService;
+	}
+	
+	@PostMapping
+	public ResponseEntity<Object> schedule(@RequestParam String fromAccountId, @RequestParam String toAccountId,
+	                                       @RequestParam BigDecimal amountToTransfer, @RequestParam long executeAt) {
+		log.info("Scheduling transfer of amount {} from account {} to account {} at {}", amountToTransfer,
+				fromAccountId, toAccountId, executeAt);
+		try {
+			ScheduledTransfer transfer = scheduledTransferService.schedule(fromAccountId, toAccountId,
+					amountToTransfer, executeAt);
+			return new ResponseEntity<>(transfer, HttpStatus.CREATED);
+		} catch (ResourceNotFoundException | InvalidAmountException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
+	
+	@GetMapping(path = "/{id}")
+	public ResponseEntity<Object> getScheduledTransfer(@PathVariable String id) {
+		ScheduledTransfer transfer = scheduledTransferService.getScheduledTransfer(id);
+		if (transfer == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(transfer, HttpStatus.OK);
+	}
+	
+	@DeleteMapping(path = "/{id}")
+	public ResponseEntity<Object> cancel(@PathVariable String id) {
+		log.info("Cancelling scheduled transfer {}", id);
+		if (!scheduledTransferService.cancel(id)) {
+			return new ResponseEntity<>("Scheduled transfer " + id + " is not pending", HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+	
+	@GetMapping(path = "/stats")
+	public Map<String, Object> getStats() {
+		return scheduledTransferService.getStats();
+	}
+}
@@ -1,10 +1,13 @@
 package com.db.awmd.challenge.web;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.AccountBusyException;
 import com.db.awmd.challenge.exception.InvalidAmountException;
 import com.db.awmd.challenge.exception.LowBalanceException;
 import com.db.awmd.challenge.exception.ResourceNotFoundException;
-import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.exception.ServiceOverloadedException;
+import com.db.awmd.challenge.service.TransferLane;
+import com.db.awmd.challenge.service.TransferScheduler;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -14,6 +17,8 @@ import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
 import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * @author abhijit.patil on 05-01-2018
@@ -25,18 +30,60 @@ import java.math.BigDecimal;
 @Slf4j
 public class TransactionController {
 	
+	/**
+	 * Request header selecting the lane of a transfer, {@code interactive} (default) or {@code bulk}.
+	 */
+	public static final String PRIORITY_HEADER = "X-Transfer-Priority";
+	
+	private final TransferScheduler transferScheduler;
+	
 	@Autowired
-	private TransactionService transactionService;
+	public TransactionController(TransferScheduler transferScheduler) {
+		this.transferScheduler = transferScheduler;
+	}
 	
 	@PostMapping(value = "/transfer", consumes = MediaType.APPLICATION_JSON_VALUE)
 	public ResponseEntity<Object> transfer(@RequestParam (required = true) String fromAccountId, @RequestParam
-			(required = true) String toAccountId, @RequestParam (required = true) BigDecimal amountToTransfer) {
+			(required = true) String toAccountId, @RequestParam (required = true) BigDecimal amountToTransfer,
+	                                       @RequestHeader(value = PRIORITY_HEADER, required = false) String priority) {
+		TransferLane lane;
+		try {
+			lane = priority == null ? TransferLane.INTERACTIVE : TransferLane.valueOf(priority.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>("Unknown transfer priority " + priority, HttpStatus.BAD_REQUEST);
+		}
+		return transfer(lane, fromAccountId, toAccountId, amountToTransfer);
+	}
+	
+	/**
+	 * Transfer in the bulk lane, for batch and settlement jobs.
+	 */
+	@PostMapping(value = "/bulk/transfer", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> bulkTransfer(@RequestParam String fromAccountId, @RequestParam String toAccountId,
+	                                           @RequestParam BigDecimal amountToTransfer) {
+		return transfer(TransferLane.BULK, fromAccountId, toAccountId, amountToTransfer);
+	}
+	
+	/**
+	 * Running and queued transfers, grants, rejections and queueing time per priority lane.
+	 */
+	@GetMapping(path = "/lanes")
+	public Map<String, Object> getLanes() {
+		return transferScheduler.getStats();
+	}
+	
+	private ResponseEntity<Object> transfer(TransferLane lane, String fromAccountId, String toAccountId,
+	                                        BigDecimal amountToTransfer) {
 		log.info("Transferring amount {} from account {} to account {}", fromAccountId, toAccountId, amountToTransfer);
 		try {
-			String result = transactionService.transfer(fromAccountId, toAccountId, amountToTransfer);
+			String result = transferScheduler.transfer(lane, fromAccountId, toAccountId, amountToTransfer);
 		} catch (ResourceNotFoundException | InvalidAmountException | LowBalanceException e){
 			//TODO Can be replaced with exceptionhandler (controlleradvice)
 			return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (AccountBusyException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.TOO_MANY_REQUESTS);
+		} catch (ServiceOverloadedException e) {
+			return new ResponseEntity<>(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
 		}
 		log.info("Transfer successful");
 		return new ResponseEntity<>(HttpStatus.OK);
@@ -0,0 +1,61 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.repository.AccountIdDictionary;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class AccountIdDictionaryTest {
+	
+	@Test
+	public void register_AssignsDenseStableHandles() {
+		AccountIdDictionary dictionary = new AccountIdDictionary();
+		for (int i = 0; i < 10_000; i++) {
+			Assert.assertEquals(i, dictionary.register("Id-" + i));
+		}
+		
+		Assert.assertEquals(42, dictionary.register("Id-42"));
+		Assert.assertEquals(9_999, dictionary.handleOf("Id-9999"));
+		Assert.assertEquals("Id-1234", dictionary.idOf(1234));
+		Assert.assertEquals(AccountIdDictionary.NONE, dictionary.handleOf("Id-unknown"));
+		Assert.assertNull(dictionary.idOf(10_000));
+		Assert.assertEquals(10_000, dictionary.size());
+	}
+	
+	@Test
+	public void register_Concurrently() throws Exception {
+		AccountIdDictionary dictionary = new AccountIdDictionary();
+		Set<Integer> handles = ConcurrentHashMap.newKeySet();
+		// assertions on the workers would only kill the thread, mismatches are collected and asserted after joining
+		List<String> mismatches = Collections.synchronizedList(new ArrayList<>());
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 20_000; i++) {
+					String accountId = "Id-" + i;
+					int handle = dictionary.register(accountId);
+					handles.add(handle);
+					// readers never lock, they must still find what was registered
+					if (dictionary.handleOf(accountId) != handle || !accountId.equals(dictionary.idOf(handle))) {
+						mismatches.add(accountId + " registered as " + handle + " but read back as "
+								+ dictionary.handleOf(accountId) + "/" + dictionary.idOf(handle));
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		Assert.assertEquals(Collections.emptyList(), mismatches);
+		Assert.assertEquals(20_000, dictionary.size());
+		Assert.assertEquals(20_000, handles.size());
+	}
+}
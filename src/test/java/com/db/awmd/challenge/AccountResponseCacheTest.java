@@ -0,0 +1,101 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountResponseCache;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.HoldService;
+import com.db.awmd.challenge.service.HotAccountTracker;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmissionLimiter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+public class AccountResponseCacheTest {
+	
+	private AccountsService accountsService;
+	
+	private AccountResponseCache accountResponseCache;
+	
+	private TransactionService transactionService;
+	
+	private HoldService holdService;
+	
+	@Before
+	public void createAccounts() {
+		accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		accountResponseCache = new AccountResponseCache(accountsService, new ObjectMapper(), 100);
+		transactionService = new TransactionService(accountsService, (account, description) -> { },
+				TransferAdmissionLimiter.unlimited(), HotAccountTracker.disabled(),
+				Collections.singletonList(accountResponseCache));
+		holdService = new HoldService(accountsService, Collections.singletonList(accountResponseCache), 900, 3600, 10);
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("100.50")));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal(50)));
+	}
+	
+	@After
+	public void stop() {
+		holdService.stop();
+	}
+	
+	@Test
+	public void getJson_SameAsObjectMapper() throws Exception {
+		Assert.assertEquals(new ObjectMapper().writeValueAsString(accountsService.getAccount("Id-1")), json("Id-1"));
+		Assert.assertEquals("{\"accountId\":\"Id-1\",\"balance\":100.50,\"heldBalance\":0}", json("Id-1"));
+	}
+	
+	@Test
+	public void getJson_CachedUntilTransfer() {
+		byte[] first = accountResponseCache.getJson("Id-1");
+		Assert.assertSame(first, accountResponseCache.getJson("Id-1"));
+		
+		transactionService.transfer("Id-1", "Id-2", new BigDecimal("0.50"));
+		
+		Assert.assertEquals("{\"accountId\":\"Id-1\",\"balance\":100.00,\"heldBalance\":0}", json("Id-1"));
+		Assert.assertEquals(1L, accountResponseCache.getStats().get("hits"));
+		Assert.assertEquals(1L, accountResponseCache.getStats().get("invalidations"));
+	}
+	
+	@Test
+	public void getJson_InvalidatedByHold() {
+		json("Id-2");
+		
+		holdService.authorize("Id-2", new BigDecimal(20), 0);
+		
+		Assert.assertEquals("{\"accountId\":\"Id-2\",\"balance\":30,\"heldBalance\":20}", json("Id-2"));
+	}
+	
+	@Test
+	public void getJson_RecreatedAccountNotServedFromCache() {
+		json("Id-1");
+		accountsService.clearAccounts();
+		accountsService.createAccount(new Account("Id-1", new BigDecimal(7)));
+		
+		Assert.assertEquals("{\"accountId\":\"Id-1\",\"balance\":7,\"heldBalance\":0}", json("Id-1"));
+	}
+	
+	@Test
+	public void getJson_EvictionKeepsFrequentlyReadEntries() {
+		for (int i = 0; i < 300; i++) {
+			accountsService.createAccount(new Account("Id-other-" + i, BigDecimal.ONE));
+		}
+		for (int i = 0; i < 300; i++) {
+			accountResponseCache.getJson("Id-1");
+			accountResponseCache.getJson("Id-other-" + i);
+		}
+		
+		Assert.assertEquals(299L, accountResponseCache.getStats().get("hits"));
+		Assert.assertEquals(100, accountResponseCache.getStats().get("size"));
+	}
+	
+	private String json(String accountId) {
+		return new String(accountResponseCache.getJson(accountId), StandardCharsets.UTF_8);
+	}
+}
@@ -9,6 +9,7 @@ import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppC
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransactionService;
 import java.math.BigDecimal;
 import org.junit.Before;
 import org.junit.Test;
@@ -31,6 +32,9 @@ public class AccountsControllerTest {
   @Autowired
   private AccountsService accountsService;
 
+  @Autowired
+  private TransactionService transactionService;
+
   @Autowired
   private WebApplicationContext webApplicationContext;
 
@@ -39,7 +43,7 @@ public class AccountsControllerTest {
     this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
 
     // Reset the existing accounts before each test.
-    accountsService.getAccountsRepository().clearAccounts();
+    accountsService.clearAccounts();
   }
 
   @Test
@@ -99,6 +103,21 @@ public class AccountsControllerTest {
     this.mockMvc.perform(get("/v1/accounts/" + uniqueAccountId))
       .andExpect(status().isOk())
       .andExpect(
-        content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45}"));
+        content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45,\"heldBalance\":0}"));
+  }
+
+  @Test
+  public void getAccount_AfterTransfer() throws Exception {
+    this.accountsService.createAccount(new Account("Id-123", new BigDecimal("123.45")));
+    this.accountsService.createAccount(new Account("Id-124", new BigDecimal("10")));
+    this.mockMvc.perform(get("/v1/accounts/Id-123"))
+      .andExpect(content().string("{\"accountId\":\"Id-123\",\"balance\":123.45,\"heldBalance\":0}"));
+
+    this.transactionService.transfer("Id-123", "Id-124", new BigDecimal("23.45"));
+
+    this.mockMvc.perform(get("/v1/accounts/Id-123"))
+      .andExpect(status().isOk())
+      .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+      .andExpect(content().string("{\"accountId\":\"Id-123\",\"balance\":100.00,\"heldBalance\":0}"));
   }
 }
@@ -0,0 +1,173 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AuditService;
+import com.db.awmd.challenge.service.HoldService;
+import com.db.awmd.challenge.service.HotAccountTracker;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmissionLimiter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+public class AccountsRepositoryTieringTest {
+
+	// handles are assigned in creation order, Id-i has handle i
+	private static final int ACCOUNTS = 600;
+
+	private AccountsRepositoryInMemory repository;
+
+	private AccountsService accountsService;
+
+	@Before
+	public void createAccounts() throws Exception {
+		// a dormant period of one sweep interval, sweeps are triggered by the tests
+		repository = new AccountsRepositoryInMemory(true, 1, 3600,
+				Files.createTempDirectory("accounts-tiering-test").toString());
+		accountsService = new AccountsService(repository);
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountsService.createAccount(new Account("Id-" + i, balanceOf(i)));
+		}
+	}
+
+	@After
+	public void close() throws InterruptedException {
+		repository.close();
+	}
+
+	@Test
+	public void sweep_MovesDormantAccountsToColdTier() {
+		repository.sweep();
+		for (int i = 0; i < 10; i++) {
+			accountsService.getAccount("Id-" + i);
+		}
+		repository.sweep();
+
+		Map<String, Object> stats = repository.getTierStats();
+		Assert.assertEquals(10, stats.get("hotAccounts"));
+		Assert.assertEquals(ACCOUNTS - 10, stats.get("coldAccounts"));
+		Assert.assertEquals(1, stats.get("coldSegments"));
+		Assert.assertEquals((long) (ACCOUNTS - 10), stats.get("demotions"));
+		Assert.assertNotNull(repository.getAccount(3));
+		Assert.assertNull(repository.getAccount(100));
+	}
+
+	@Test
+	public void getAccount_PromotesColdAccount() {
+		demoteAll();
+		int handle = 123;
+
+		Account account = accountsService.getAccount("Id-123");
+
+		Assert.assertEquals("Id-123", account.getAccountId());
+		Assert.assertEquals(handle, account.getHandle());
+		Assert.assertEquals(balanceOf(123), account.getBalance());
+		Assert.assertSame(account, repository.getAccount(handle));
+		Assert.assertSame(account, accountsService.getAccount("Id-123"));
+		Map<String, Object> stats = repository.getTierStats();
+		Assert.assertEquals(1, stats.get("hotAccounts"));
+		Assert.assertEquals(ACCOUNTS - 1, stats.get("coldAccounts"));
+		Assert.assertEquals(1L, stats.get("promotions"));
+	}
+
+	@Test
+	public void loadAccount_ReadsColdAccountWithoutPromoting() {
+		demoteAll();
+		int handle = 7;
+
+		Account account = accountsService.loadAccount(handle);
+
+		Assert.assertEquals("Id-7", account.getAccountId());
+		Assert.assertEquals(balanceOf(7), account.getBalance());
+		Assert.assertNull(repository.getAccount(handle));
+		Assert.assertEquals(0L, repository.getTierStats().get("promotions"));
+	}
+
+	@Test
+	public void transfer_BetweenColdAccounts() {
+		demoteAll();
+		TransactionService transactionService = new TransactionService(accountsService, (account, description) -> { },
+				TransferAdmissionLimiter.unlimited(), HotAccountTracker.disabled(), Collections.emptyList());
+
+		transactionService.transfer("Id-10", "Id-20", new BigDecimal("5.25"));
+
+		Assert.assertEquals(balanceOf(10).subtract(new BigDecimal("5.25")),
+				accountsService.getAccount("Id-10").getBalance());
+		Assert.assertEquals(balanceOf(20).add(new BigDecimal("5.25")), accountsService.getAccount("Id-20").getBalance());
+		Assert.assertEquals(2L, repository.getTierStats().get("promotions"));
+	}
+
+	@Test
+	public void sweep_KeepsAccountsWithHeldFunds() throws InterruptedException {
+		HoldService holdService = new HoldService(accountsService, Collections.emptyList(), 900, 3600, 10);
+		try {
+			holdService.authorize("Id-5", BigDecimal.ONE, 0);
+			repository.sweep();
+			repository.sweep();
+
+			Assert.assertNotNull(repository.getAccount(5));
+			Assert.assertEquals(ACCOUNTS - 1, repository.getTierStats().get("coldAccounts"));
+		} finally {
+			holdService.stop();
+		}
+	}
+
+	@Test
+	public void sweep_CompactsMostlyPromotedSegment() {
+		demoteAll();
+		for (int i = 0; i < ACCOUNTS * 3 / 4; i++) {
+			accountsService.getAccount("Id-" + i);
+		}
+
+		repository.sweep();
+
+		Map<String, Object> stats = repository.getTierStats();
+		Assert.assertEquals(1, stats.get("coldSegments"));
+		Assert.assertEquals(ACCOUNTS / 4, stats.get("coldAccounts"));
+		for (int i = ACCOUNTS * 3 / 4; i < ACCOUNTS; i++) {
+			Assert.assertEquals(balanceOf(i), accountsService.loadAccount(i).getBalance());
+			Assert.assertEquals(balanceOf(i), accountsService.getAccount("Id-" + i).getBalance());
+		}
+	}
+
+	@Test
+	public void audit_CoversColdAccounts() throws InterruptedException {
+		AuditService auditService = new AuditService(accountsService, 2, 64);
+		try {
+			demoteAll();
+			accountsService.getAccount("Id-1");
+
+			Map<String, Object> report = auditService.audit(null);
+
+			BigDecimal expected = BigDecimal.ZERO;
+			for (int i = 0; i < ACCOUNTS; i++) {
+				expected = expected.add(balanceOf(i));
+			}
+			Assert.assertEquals(report.get("discrepancies").toString(), true, report.get("balanced"));
+			Assert.assertEquals((long) ACCOUNTS, report.get("accounts"));
+			Assert.assertEquals(0, expected.compareTo((BigDecimal) report.get("total")));
+			Assert.assertEquals(1L, repository.getTierStats().get("promotions"));
+		} finally {
+			auditService.stop();
+		}
+	}
+
+	private void demoteAll() {
+		repository.sweep();
+		repository.sweep();
+		Assert.assertEquals(0, repository.getTierStats().get("hotAccounts"));
+	}
+
+	private static BigDecimal balanceOf(int i) {
+		// a wide spread of scales and magnitudes
+		return i % 100 == 7 ? new BigDecimal("12345678901234567890.123456789") : new BigDecimal(1000 + i).movePointLeft(i % 3);
+	}
+}
@@ -0,0 +1,284 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.LowBalanceException;
+import com.db.awmd.challenge.repository.AccountStore;
+import com.db.awmd.challenge.repository.AccountsRepositoryWriteBehind;
+import com.db.awmd.challenge.repository.FileAccountStore;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.HotAccountTracker;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmissionLimiter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class AccountsRepositoryWriteBehindTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private Path storePath;
+	private AccountsRepositoryWriteBehind repository;
+	
+	@Before
+	public void init() {
+		storePath = folder.getRoot().toPath().resolve("accounts.db");
+		repository = new AccountsRepositoryWriteBehind(new FileAccountStore(storePath, false), 10, 50, 100);
+	}
+	
+	@After
+	public void close() throws InterruptedException {
+		repository.close();
+	}
+	
+	@Test
+	public void getAccount_ReloadsEvictedAccounts() throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			repository.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+		}
+		Account account = repository.getAccount("Id-42");
+		synchronized (account) {
+			account.setBalance(new BigDecimal("42.50"));
+			repository.updateAccount(account);
+		}
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while (repository.getCachedCount() > 10 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		Assert.assertTrue("Cache should shrink back to its bound", repository.getCachedCount() <= 10);
+		for (int i = 0; i < 100; i++) {
+			BigDecimal expected = i == 42 ? new BigDecimal("42.50") : new BigDecimal(i);
+			Assert.assertEquals(0, expected.compareTo(repository.getAccount("Id-" + i).getBalance()));
+		}
+	}
+	
+	@Test
+	public void loadAccount_ReadsUncachedAccountsWithoutCaching() throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			repository.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+		}
+		repository.flush();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (repository.getCachedCount() > 10 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		
+		BigDecimal total = BigDecimal.ZERO;
+		for (int handle = 0; handle < repository.getHandleLimit(); handle++) {
+			total = total.add(repository.loadAccount(handle).getBalance());
+		}
+		
+		Assert.assertEquals(0, new BigDecimal(4950).compareTo(total));
+		Assert.assertTrue("Walk should not pull accounts into the cache", repository.getCachedCount() <= 10);
+	}
+	
+	@Test
+	public void close_FlushesDirtyBalances() throws InterruptedException {
+		repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+		Account account = repository.getAccount("Id-1");
+		synchronized (account) {
+			account.setBalance(new BigDecimal(75));
+			repository.updateAccount(account);
+		}
+		repository.close();
+		
+		repository = new AccountsRepositoryWriteBehind(new FileAccountStore(storePath, false), 10, 50, 100);
+		Assert.assertEquals(0, new BigDecimal(75).compareTo(repository.getAccount("Id-1").getBalance()));
+	}
+	
+	@Test
+	public void createAccount_FailsOnIdsOnlyInStore() throws InterruptedException {
+		for (int i = 0; i < 50; i++) {
+			repository.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while (repository.getCachedCount() > 10 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		
+		int duplicates = 0;
+		for (int i = 0; i < 50; i++) {
+			try {
+				repository.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+			} catch (DuplicateAccountIdException e) {
+				duplicates++;
+			}
+		}
+		Assert.assertEquals(50, duplicates);
+	}
+	
+	@Test
+	public void store_DropsTornAndCorruptBatches() throws Exception {
+		repository.close();
+		FileAccountStore store = new FileAccountStore(storePath, false);
+		store.writeBatch(balances("Id-1", 100, "Id-2", 0));
+		long committed = Files.size(storePath);
+		store.writeBatch(balances("Id-1", 60, "Id-2", 40));
+		long torn = Files.size(storePath) - 3;
+		store.writeBatch(balances("Id-1", 50, "Id-2", 50));
+		store.close();
+		
+		// flip a byte in the last batch, then cut the one before short
+		byte[] log = Files.readAllBytes(storePath);
+		log[log.length - 6] ^= 1;
+		Files.write(storePath, log);
+		store = new FileAccountStore(storePath, false);
+		Assert.assertEquals(0, new BigDecimal(40).compareTo(store.load("Id-2")));
+		store.close();
+		try (FileChannel channel = FileChannel.open(storePath, StandardOpenOption.WRITE)) {
+			channel.truncate(torn);
+		}
+		
+		store = new FileAccountStore(storePath, false);
+		Assert.assertEquals(0, new BigDecimal(100).compareTo(store.load("Id-1")));
+		Assert.assertEquals(0, BigDecimal.ZERO.compareTo(store.load("Id-2")));
+		Assert.assertEquals(committed, Files.size(storePath));
+		store.close();
+		repository = new AccountsRepositoryWriteBehind(new FileAccountStore(storePath, false), 10, 50, 100);
+	}
+	
+	@Test
+	public void store_CompactsWhileWriting() throws Exception {
+		repository.close();
+		FileAccountStore store = new FileAccountStore(storePath, false);
+		try {
+			long sizeAfterFirstRound = 0;
+			for (int round = 0; round < 200; round++) {
+				Map<String, BigDecimal> batch = new HashMap<>();
+				for (int i = 0; i < 100; i++) {
+					batch.put("Id-" + i, new BigDecimal(round * 100 + i));
+				}
+				store.writeBatch(batch);
+				if (round == 0) {
+					sizeAfterFirstRound = Files.size(storePath);
+				}
+			}
+			
+			Assert.assertTrue("Log should have been compacted", Files.size(storePath) < 40 * sizeAfterFirstRound);
+			for (int i = 0; i < 100; i++) {
+				Assert.assertEquals(0, new BigDecimal(199 * 100 + i).compareTo(store.load("Id-" + i)));
+			}
+		} finally {
+			store.close();
+		}
+		repository = new AccountsRepositoryWriteBehind(new FileAccountStore(storePath, false), 10, 50, 100);
+	}
+	
+	@Test
+	public void store_RejectsOversizedIds() {
+		StringBuilder accountId = new StringBuilder();
+		for (int i = 0; i < 70_000; i++) {
+			accountId.append('x');
+		}
+		FileAccountStore store = new FileAccountStore(folder.getRoot().toPath().resolve("other.db"), false);
+		try {
+			store.writeBatch(balances(accountId.toString(), 1, "Id-1", 1));
+			Assert.fail("Store should reject ids that do not fit into a record");
+		} catch (IllegalArgumentException e) {
+			Assert.assertFalse(store.contains("Id-1"));
+		} finally {
+			store.close();
+		}
+	}
+	
+	@Test
+	public void flush_StoresConsistentCutsDuringTransfers() throws InterruptedException {
+		repository.close();
+		Map<String, BigDecimal> stored = new ConcurrentHashMap<>();
+		List<BigDecimal> inconsistentTotals = Collections.synchronizedList(new ArrayList<>());
+		AccountStore store = new AccountStore() {
+			@Override
+			public BigDecimal load(String accountId) {
+				return stored.get(accountId);
+			}
+			
+			@Override
+			public boolean contains(String accountId) {
+				return stored.containsKey(accountId);
+			}
+			
+			@Override
+			public Set<String> accountIds() {
+				return stored.keySet();
+			}
+			
+			@Override
+			public void writeBatch(Map<String, BigDecimal> balances) {
+				stored.putAll(balances);
+				BigDecimal total = stored.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+				if (stored.size() == 10 && total.compareTo(new BigDecimal(1000)) != 0) {
+					inconsistentTotals.add(total);
+				}
+			}
+			
+			@Override
+			public void clear() {
+				stored.clear();
+			}
+			
+			@Override
+			public void close() {
+			}
+		};
+		repository = new AccountsRepositoryWriteBehind(store, 100, 1, 100);
+		AccountsService accountsService = new AccountsService(repository);
+		for (int i = 0; i < 10; i++) {
+			accountsService.createAccount(new Account("Id-" + i, new BigDecimal(100)));
+		}
+		TransactionService transactionService = new TransactionService(accountsService, (account, description) -> { },
+				TransferAdmissionLimiter.unlimited(), HotAccountTracker.disabled(), Collections.emptyList());
+		
+		List<Thread> threads = new ArrayList<>();
+		long until = System.currentTimeMillis() + 300;
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (System.currentTimeMillis() < until) {
+					int from = random.nextInt(10);
+					int to = (from + 1 + random.nextInt(9)) % 10;
+					try {
+						transactionService.transfer("Id-" + from, "Id-" + to, BigDecimal.ONE);
+					} catch (LowBalanceException e) {
+						// drained, move on
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		repository.flush();
+		
+		Assert.assertEquals(Collections.emptyList(), inconsistentTotals);
+		Assert.assertEquals(0, new BigDecimal(1000).compareTo(
+				stored.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add)));
+	}
+	
+	private static Map<String, BigDecimal> balances(String firstId, int first, String secondId, int second) {
+		Map<String, BigDecimal> balances = new HashMap<>();
+		balances.put(firstId, new BigDecimal(first));
+		balances.put(secondId, new BigDecimal(second));
+		return balances;
+	}
+}
@@ -0,0 +1,173 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Hold;
+import com.db.awmd.challenge.exception.LowBalanceException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.AuditService;
+import com.db.awmd.challenge.service.HoldService;
+import com.db.awmd.challenge.service.HotAccountTracker;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmissionLimiter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class AuditServiceTest {
+	
+	private static final int ACCOUNTS = 2000;
+	
+	private AccountsService accountsService;
+	
+	private TransactionService transactionService;
+	
+	private HoldService holdService;
+	
+	private AuditService auditService;
+	
+	@Before
+	public void createAccounts() {
+		accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		transactionService = new TransactionService(accountsService, (account, description) -> { },
+				TransferAdmissionLimiter.unlimited(), HotAccountTracker.disabled(), Collections.emptyList());
+		holdService = new HoldService(accountsService, Collections.emptyList(), 900, 3600, 10);
+		auditService = new AuditService(accountsService, 4, 16);
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountsService.createAccount(new Account("Id-" + i, new BigDecimal("100.25")));
+		}
+	}
+	
+	@After
+	public void stop() throws InterruptedException {
+		holdService.stop();
+		auditService.stop();
+	}
+	
+	@Test
+	public void audit_Balanced() {
+		transactionService.transfer("Id-1", "Id-2", new BigDecimal("50.5"));
+		holdService.authorize("Id-3", new BigDecimal(20), 0);
+		
+		Map<String, Object> report = auditService.audit(null);
+		
+		Assert.assertEquals(Boolean.TRUE, report.get("balanced"));
+		Assert.assertEquals((long) ACCOUNTS, report.get("accounts"));
+		Assert.assertEquals(0, new BigDecimal("200500").compareTo((BigDecimal) report.get("total")));
+		Assert.assertEquals(0, new BigDecimal(20).compareTo((BigDecimal) report.get("heldTotal")));
+		Assert.assertEquals("issued", report.get("expectedTotalSource"));
+		Assert.assertEquals(report, auditService.getLastReport());
+	}
+	
+	@Test
+	public void audit_BalancedAfterClear() {
+		accountsService.clearAccounts();
+		accountsService.createAccount(new Account("Id-new", new BigDecimal("7.50")));
+		
+		Map<String, Object> report = auditService.audit(null);
+		
+		Assert.assertEquals(report.get("discrepancies").toString(), Boolean.TRUE, report.get("balanced"));
+		Assert.assertEquals(0, new BigDecimal("7.50").compareTo((BigDecimal) report.get("expectedTotal")));
+	}
+	
+	@Test
+	public void audit_TotalDiffersFromExpected() {
+		Map<String, Object> report = auditService.audit(new BigDecimal("200499.99"));
+		
+		Assert.assertEquals(Boolean.FALSE, report.get("balanced"));
+		Assert.assertEquals(0, new BigDecimal("0.01").compareTo((BigDecimal) report.get("difference")));
+		Assert.assertEquals("request", report.get("expectedTotalSource"));
+	}
+	
+	@Test
+	public void audit_ReportsNegativeBalance() {
+		Account account = accountsService.getAccount("Id-7");
+		account.setBalance(new BigDecimal("-0.25"));
+		accountsService.getAccount("Id-8").setBalance(new BigDecimal("200.75"));
+		
+		Map<String, Object> report = auditService.audit(null);
+		
+		Assert.assertEquals(Boolean.FALSE, report.get("balanced"));
+		Assert.assertEquals(1L, report.get("negativeAccounts"));
+		Assert.assertEquals(0, BigDecimal.ZERO.compareTo((BigDecimal) report.get("difference")));
+		Assert.assertTrue(report.get("discrepancies").toString().contains("Id-7"));
+	}
+	
+	@Test
+	public void audit_SeesTransferDuringWalkAsAfterSnapshot() throws InterruptedException {
+		// walked in handle order by one thread; halfway through, money moves from an account already read to one not read
+		AtomicBoolean transferred = new AtomicBoolean();
+		AccountsService midWalkAccounts = new AccountsService(new AccountsRepositoryInMemory() {
+			@Override
+			public Account loadAccount(int handle) {
+				if (handle == ACCOUNTS / 2 && transferred.compareAndSet(false, true)) {
+					transactionService.transfer("Id-0", "Id-" + (ACCOUNTS - 1), new BigDecimal(100));
+				}
+				return super.loadAccount(handle);
+			}
+		});
+		transactionService = new TransactionService(midWalkAccounts, (account, description) -> { },
+				TransferAdmissionLimiter.unlimited(), HotAccountTracker.disabled(), Collections.emptyList());
+		for (int i = 0; i < ACCOUNTS; i++) {
+			midWalkAccounts.createAccount(new Account("Id-" + i, new BigDecimal("100.25")));
+		}
+		AuditService sequentialAudit = new AuditService(midWalkAccounts, 1, ACCOUNTS);
+		try {
+			Map<String, Object> report = sequentialAudit.audit(null);
+			
+			Assert.assertTrue(transferred.get());
+			Assert.assertEquals(report.get("discrepancies").toString(), Boolean.TRUE, report.get("balanced"));
+			Assert.assertEquals(1, report.get("changedDuringAudit"));
+			Assert.assertEquals(0, new BigDecimal("0.25").compareTo(midWalkAccounts.getAccount("Id-0").getBalance()));
+		} finally {
+			sequentialAudit.stop();
+		}
+	}
+	
+	@Test
+	public void audit_ConsistentWhileTransfersRun() throws InterruptedException {
+		AtomicBoolean running = new AtomicBoolean(true);
+		List<Thread> workers = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			Thread worker = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (running.get()) {
+					String from = "Id-" + random.nextInt(ACCOUNTS);
+					String to = "Id-" + random.nextInt(ACCOUNTS);
+					try {
+						if (random.nextBoolean()) {
+							transactionService.transfer(from, to, BigDecimal.valueOf(1 + random.nextInt(5000), 2));
+						} else {
+							Hold hold = holdService.authorize(from, BigDecimal.ONE, 0);
+							holdService.releaseAll(Collections.singletonList(hold.getId()));
+						}
+					} catch (LowBalanceException e) {
+						// drained, try another pair
+					}
+				}
+			});
+			workers.add(worker);
+			worker.start();
+		}
+		try {
+			for (int i = 0; i < 20; i++) {
+				Map<String, Object> report = auditService.audit(null);
+				Assert.assertEquals(report.get("discrepancies").toString(), Boolean.TRUE, report.get("balanced"));
+			}
+		} finally {
+			running.set(false);
+			for (Thread worker : workers) {
+				worker.join();
+			}
+		}
+	}
+}
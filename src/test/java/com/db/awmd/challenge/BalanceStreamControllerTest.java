@@ -0,0 +1,80 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransactionService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.math.BigDecimal;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+public class BalanceStreamControllerTest {
+	
+	private MockMvc mockMvc;
+	
+	@Autowired
+	private TransactionService transactionService;
+	
+	@Autowired
+	private AccountsService accountsService;
+	
+	@Autowired
+	private WebApplicationContext webApplicationContext;
+	
+	@Before
+	public void prepareMockMvc() {
+		this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+		// Reset the existing accounts before each test.
+		accountsService.clearAccounts();
+	}
+	
+	@Test
+	public void stream_PushesCurrentAndChangedBalances() throws Exception {
+		accountsService.createAccount(new Account("Id-201", new BigDecimal(100)));
+		accountsService.createAccount(new Account("Id-202", new BigDecimal(50)));
+		
+		MvcResult result = this.mockMvc.perform(get("/v1/balances/stream").param("accountIds", "Id-201,Id-202"))
+				.andExpect(request().asyncStarted()).andReturn();
+		awaitContent(result, "\"accountId\":\"Id-201\",\"balance\":100");
+		awaitContent(result, "\"accountId\":\"Id-202\",\"balance\":50");
+		
+		transactionService.transfer("Id-201", "Id-202", new BigDecimal(10));
+		
+		awaitContent(result, "\"accountId\":\"Id-201\",\"balance\":90");
+		awaitContent(result, "\"accountId\":\"Id-202\",\"balance\":60");
+	}
+	
+	@Test
+	public void stream_UnknownAccount() throws Exception {
+		accountsService.createAccount(new Account("Id-203", new BigDecimal(100)));
+		
+		this.mockMvc.perform(get("/v1/balances/stream").param("accountIds", "Id-203,Id-missing"))
+				.andExpect(status().isNotFound());
+	}
+	
+	private static void awaitContent(MvcResult result, String expected) throws Exception {
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (!result.getResponse().getContentAsString().contains(expected)) {
+			Assert.assertTrue("stream never contained " + expected + ": " + result.getResponse().getContentAsString(),
+					System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceUpdate;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BalanceStreamService;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+
+public class BalanceStreamServiceTest {
+	
+	private AccountsService accountsService;
+	
+	// emitters handed out to the next subscribers, in order
+	private final Deque<RecordingEmitter> emitters = new ArrayDeque<>();
+	
+	private BalanceStreamService balanceStreamService;
+	
+	@Before
+	public void createService() {
+		accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		accountsService.createAccount(new Account("Id-1", new BigDecimal(100)));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal(50)));
+		balanceStreamService = new BalanceStreamService(accountsService, 2, 100, 10, 60_000, 50, 4) {
+			@Override
+			protected SseEmitter createEmitter(long timeoutMillis) {
+				return emitters.poll();
+			}
+		};
+	}
+	
+	@After
+	public void stopService() throws InterruptedException {
+		for (RecordingEmitter emitter : emitters) {
+			emitter.unblock.countDown();
+		}
+		balanceStreamService.stop();
+	}
+	
+	@Test
+	public void stream_StalledSubscriberDoesNotHoldUpOthers() throws Exception {
+		RecordingEmitter stalled = new RecordingEmitter(true);
+		RecordingEmitter reading = new RecordingEmitter(false);
+		emitters.addAll(Arrays.asList(stalled, reading));
+		try {
+			balanceStreamService.subscribe(Arrays.asList("Id-1", "Id-2"));
+			balanceStreamService.subscribe(Arrays.asList("Id-1", "Id-2"));
+			await(() -> stalled.sending && reading.sent.size() == 2);
+	
+			// the stalled subscriber is dropped after the send timeout, its stream completed while its send still blocks
+			await(() -> (Long) balanceStreamService.getStats().get("stalled") == 1);
+			for (int i = 1; i <= 10; i++) {
+				balanceStreamService.balanceChanged(new Account("Id-1", new BigDecimal(100 + i)));
+				BigDecimal expected = new BigDecimal(100 + i);
+				await(() -> reading.latestBalance("Id-1").equals(expected));
+			}
+			balanceStreamService.balanceChanged(new Account("Id-2", new BigDecimal(60)));
+			await(() -> reading.latestBalance("Id-2").equals(new BigDecimal(60)));
+			Assert.assertEquals(0, stalled.sent.size());
+		} finally {
+			stalled.unblock.countDown();
+		}
+	}
+	
+	@Test
+	public void stream_CoalescesChangesWhileSubscriberIsBehind() throws Exception {
+		RecordingEmitter slow = new RecordingEmitter(true);
+		emitters.add(slow);
+		balanceStreamService.subscribe(Arrays.asList("Id-1"));
+		await(() -> slow.sending);
+	
+		// the initial balance is being sent, every change from now on replaces the one before it
+		for (int i = 1; i <= 100; i++) {
+			balanceStreamService.balanceChanged(new Account("Id-1", new BigDecimal(100 + i)));
+		}
+		await(() -> (Long) balanceStreamService.getStats().get("coalesced") == 99);
+		slow.unblock.countDown();
+	
+		await(() -> slow.sent.size() == 2);
+		Assert.assertEquals(new BigDecimal(100), slow.sent.get(0).getBalance());
+		Assert.assertEquals(new BigDecimal(200), slow.sent.get(1).getBalance());
+		Thread.sleep(100);
+		Assert.assertEquals(2, slow.sent.size());
+		Assert.assertEquals(100L, balanceStreamService.getStats().get("published"));
+	}
+	
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (!condition.getAsBoolean()) {
+			Assert.assertTrue("condition not met in time", System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+	}
+	
+	/**
+	 * Records the balance updates sent to it. A blocking one stands for a client that does not read: its first send
+	 * blocks, holding the emitter's monitor like a servlet write would, until it is unblocked.
+	 */
+	private static class RecordingEmitter extends SseEmitter {
+	
+		private final boolean blocking;
+	
+		private final CountDownLatch unblock = new CountDownLatch(1);
+	
+		private final List<BalanceUpdate> sent = new CopyOnWriteArrayList<>();
+	
+		private volatile boolean sending;
+	
+		RecordingEmitter(boolean blocking) {
+			super(60_000L);
+			this.blocking = blocking;
+		}
+	
+		@Override
+		public synchronized void send(SseEventBuilder builder) throws IOException {
+			sending = true;
+			if (blocking) {
+				try {
+					unblock.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				}
+			}
+			for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+				if (data.getData() instanceof BalanceUpdate) {
+					sent.add((BalanceUpdate) data.getData());
+				}
+			}
+		}
+	
+		BigDecimal latestBalance(String accountId) {
+			BigDecimal latest = null;
+			for (BalanceUpdate update : sent) {
+				if (update.getAccountId().equals(accountId)) {
+					latest = update.getBalance();
+				}
+			}
+			return latest == null ? BigDecimal.ZERO : latest;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Hold;
+import com.db.awmd.challenge.domain.HoldSettlement;
+import com.db.awmd.challenge.exception.InvalidAmountException;
+import com.db.awmd.challenge.exception.LowBalanceException;
+import com.db.awmd.challenge.exception.ResourceNotFoundException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.HoldService;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+public class HoldServiceTest {
+	
+	private AccountsService accountsService;
+	
+	private HoldService holdService;
+	
+	@Before
+	public void createAccounts() {
+		accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		holdService = new HoldService(accountsService, Collections.emptyList(), 900, 3600, 10);
+		accountsService.createAccount(new Account("Id-1", new BigDecimal(100)));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal(50)));
+	}
+	
+	@After
+	public void stop() {
+		holdService.stop();
+	}
+	
+	@Test
+	public void authorize_MovesFundsToHeld() {
+		Hold hold = holdService.authorize("Id-1", new BigDecimal(30), 0);
+		
+		assertBalances("Id-1", 70, 30);
+		Assert.assertEquals(hold, holdService.getHold(hold.getId()));
+	}
+	
+	@Test(expected = LowBalanceException.class)
+	public void authorize_LowBalance() {
+		holdService.authorize("Id-1", new BigDecimal("100.01"), 0);
+	}
+	
+	@Test
+	public void settle_PartialAmountReleasesTheRest() {
+		Hold hold = holdService.authorize("Id-1", new BigDecimal(30), 0);
+		
+		holdService.settle(new HoldSettlement(hold.getId(), "Id-2", new BigDecimal(20)));
+		
+		assertBalances("Id-1", 80, 0);
+		assertBalances("Id-2", 70, 0);
+		Assert.assertNull(holdService.getHold(hold.getId()));
+	}
+	
+	@Test
+	public void settle_MoreThanHeld() {
+		Hold hold = holdService.authorize("Id-1", new BigDecimal(30), 0);
+		try {
+			holdService.settle(new HoldSettlement(hold.getId(), "Id-2", new BigDecimal(31)));
+			Assert.fail("Settling more than held should fail");
+		} catch (InvalidAmountException e) {
+			// the hold stays open
+			Assert.assertNotNull(holdService.getHold(hold.getId()));
+		}
+	}
+	
+	@Test
+	public void release_ReturnsFundsOnce() {
+		Hold hold = holdService.authorize("Id-1", new BigDecimal(30), 0);
+		
+		holdService.release(hold.getId());
+		assertBalances("Id-1", 100, 0);
+		try {
+			holdService.release(hold.getId());
+			Assert.fail("A hold can only be finalized once");
+		} catch (ResourceNotFoundException e) {
+			assertBalances("Id-1", 100, 0);
+		}
+	}
+	
+	@Test
+	public void settleAll_ReportsEveryHold() {
+		Hold first = holdService.authorize("Id-1", new BigDecimal(10), 0);
+		Hold second = holdService.authorize("Id-1", new BigDecimal(20), 0);
+		Hold third = holdService.authorize("Id-2", new BigDecimal(5), 0);
+		
+		Map<String, String> results = holdService.settleAll(Arrays.asList(
+				new HoldSettlement(first.getId(), "Id-2", null),
+				new HoldSettlement(second.getId(), "Id-2", new BigDecimal(15)),
+				new HoldSettlement(third.getId(), "Id-1", null),
+				new HoldSettlement("Id-unknown", "Id-1", null)));
+		
+		Assert.assertEquals("SETTLED", results.get(first.getId()));
+		Assert.assertEquals("SETTLED", results.get(second.getId()));
+		Assert.assertEquals("SETTLED", results.get(third.getId()));
+		Assert.assertNotEquals("SETTLED", results.get("Id-unknown"));
+		assertBalances("Id-1", 100 - 10 - 15 + 5, 0);
+		assertBalances("Id-2", 50 + 10 + 15 - 5, 0);
+	}
+	
+	@Test
+	public void releaseAll_ReportsEveryHold() {
+		Hold first = holdService.authorize("Id-1", new BigDecimal(10), 0);
+		Hold second = holdService.authorize("Id-1", new BigDecimal(20), 0);
+		
+		holdService.release(first.getId());
+		
+		Map<String, String> results = holdService.releaseAll(Arrays.asList(first.getId(), second.getId()));
+		
+		Assert.assertNotEquals("RELEASED", results.get(first.getId()));
+		Assert.assertEquals("RELEASED", results.get(second.getId()));
+		assertBalances("Id-1", 100, 0);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void settleAll_RejectsDuplicateHolds() {
+		Hold hold = holdService.authorize("Id-1", new BigDecimal(10), 0);
+		
+		try {
+			holdService.settleAll(Arrays.asList(new HoldSettlement(hold.getId(), "Id-2", new BigDecimal(5)),
+					new HoldSettlement(hold.getId(), "Id-2", null)));
+		} finally {
+			Assert.assertEquals(hold, holdService.getHold(hold.getId()));
+			assertBalances("Id-1", 90, 10);
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void releaseAll_RejectsDuplicateHolds() {
+		Hold hold = holdService.authorize("Id-1", new BigDecimal(10), 0);
+		
+		try {
+			holdService.releaseAll(Arrays.asList(hold.getId(), hold.getId()));
+		} finally {
+			Assert.assertEquals(hold, holdService.getHold(hold.getId()));
+			assertBalances("Id-1", 90, 10);
+		}
+	}
+	
+	@Test
+	public void settleAndRelease_CancelExpiry() {
+		Hold settled = holdService.authorize("Id-1", new BigDecimal(10), 0);
+		Hold released = holdService.authorize("Id-1", new BigDecimal(20), 0);
+		Assert.assertEquals(2, holdService.getStats().get("pendingExpiries"));
+		
+		holdService.settle(new HoldSettlement(settled.getId(), "Id-2", null));
+		holdService.release(released.getId());
+		
+		Assert.assertEquals(0, holdService.getStats().get("pendingExpiries"));
+	}
+	
+	@Test
+	public void expiredHoldsAreReleased() throws Exception {
+		Hold hold = holdService.authorize("Id-1", new BigDecimal(30), 50);
+		
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (!Long.valueOf(1).equals(holdService.getStats().get("expired")) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		
+		Assert.assertEquals(1L, holdService.getStats().get("expired"));
+		Assert.assertNull(holdService.getHold(hold.getId()));
+		assertBalances("Id-1", 100, 0);
+	}
+	
+	@Test
+	public void expiredHolds_StayOpenWhileTheyCannotBeReleased() throws Exception {
+		Hold hold = holdService.authorize("Id-1", new BigDecimal(30), 20);
+		// the account disappears, releasing the hold fails on every tick
+		accountsService.clearAccounts();
+		
+		Thread.sleep(200);
+		
+		Assert.assertEquals(hold, holdService.getHold(hold.getId()));
+		Assert.assertEquals(0L, holdService.getStats().get("expired"));
+	}
+	
+	private void assertBalances(String accountId, int available, int held) {
+		Account account = accountsService.getAccount(accountId);
+		Assert.assertEquals(0, new BigDecimal(available).compareTo(account.getBalance()));
+		Assert.assertEquals(0, new BigDecimal(held).compareTo(account.getHeldBalance()));
+	}
+}
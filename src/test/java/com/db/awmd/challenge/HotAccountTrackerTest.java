@@ -0,0 +1,36 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.service.HotAccountTracker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class HotAccountTrackerTest {
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void getHotAccounts_RanksMostTransferredFirst() {
+		HotAccountTracker tracker = new HotAccountTracker(true, 3, 60, 50);
+		for (int i = 0; i < 10_000; i++) {
+			tracker.transferRequested("Id-cold-" + i, i % 2 == 0 ? "Id-hot" : "Id-warm-" + (i % 10));
+		}
+		
+		Map<String, Long> transfers = (Map<String, Long>) tracker.getHotAccounts(3).get("transfers");
+		Assert.assertEquals("Id-hot", transfers.keySet().iterator().next());
+		Assert.assertTrue(transfers.get("Id-hot") >= 5_000);
+		Assert.assertFalse(transfers.containsKey("Id-cold-1"));
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void lockAcquired_CountsOnlyWaitsAboveThreshold() {
+		HotAccountTracker tracker = new HotAccountTracker(true, 3, 60, 50);
+		tracker.lockAcquired("Id-1", 1_000);
+		tracker.lockAcquired("Id-2", 100_000);
+		
+		Map<String, Long> contended = (Map<String, Long>) tracker.getHotAccounts(3).get("contended");
+		Assert.assertFalse(contended.containsKey("Id-1"));
+		Assert.assertEquals(Long.valueOf(1), contended.get("Id-2"));
+	}
+}
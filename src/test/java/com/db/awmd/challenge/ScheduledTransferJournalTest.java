@@ -0,0 +1,69 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.repository.ScheduledTransferJournal;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class ScheduledTransferJournalTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private Path journalPath;
+	
+	@Before
+	public void init() {
+		journalPath = folder.getRoot().toPath().resolve("scheduled.journal");
+	}
+	
+	@Test
+	public void replay_KeepsFieldsWithSeparators() {
+		ScheduledTransfer transfer = new ScheduledTransfer("Id\t1", "Id-from\nline", "Id-to\\t\r",
+				new BigDecimal("12.50"), 1000);
+		ScheduledTransferJournal journal = new ScheduledTransferJournal(journalPath);
+		journal.replay();
+		journal.scheduled(transfer);
+		journal.close();
+		
+		List<ScheduledTransfer> replayed = new ScheduledTransferJournal(journalPath).replay();
+		
+		Assert.assertEquals(1, replayed.size());
+		assertSameTransfer(transfer, replayed.get(0));
+	}
+	
+	@Test
+	public void replay_SkipsCompletedAndCancelled() {
+		ScheduledTransfer done = new ScheduledTransfer("Id\t1", "Id-1", "Id-2", BigDecimal.ONE, 1000);
+		ScheduledTransfer cancelled = new ScheduledTransfer("Id-2", "Id-1", "Id-2", BigDecimal.ONE, 1000);
+		ScheduledTransfer pending = new ScheduledTransfer("Id-3", "Id-1", "Id-2", BigDecimal.ONE, 1000);
+		ScheduledTransferJournal journal = new ScheduledTransferJournal(journalPath);
+		journal.replay();
+		for (ScheduledTransfer transfer : Arrays.asList(done, cancelled, pending)) {
+			journal.scheduled(transfer);
+		}
+		journal.completed(done.getId());
+		journal.cancelled(cancelled.getId());
+		
+		// read while the journal is still open, as after a crash
+		List<ScheduledTransfer> replayed = new ScheduledTransferJournal(journalPath).replay();
+		
+		Assert.assertEquals(1, replayed.size());
+		assertSameTransfer(pending, replayed.get(0));
+	}
+	
+	private static void assertSameTransfer(ScheduledTransfer expected, ScheduledTransfer actual) {
+		Assert.assertEquals(expected.getId(), actual.getId());
+		Assert.assertEquals(expected.getFromAccountId(), actual.getFromAccountId());
+		Assert.assertEquals(expected.getToAccountId(), actual.getToAccountId());
+		Assert.assertEquals(expected.getAmount(), actual.getAmount());
+		Assert.assertEquals(expected.getExecuteAt(), actual.getExecuteAt());
+	}
+}
@@ -0,0 +1,87 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.ScheduledTransferService;
+import com.db.awmd.challenge.service.TimingWheel;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class ScheduledTransferServiceTest {
+	
+	@Autowired
+	private ScheduledTransferService scheduledTransferService;
+	@Autowired
+	private AccountsService accountsService;
+	private Account fromAccount;
+	private Account toAccount;
+	
+	@Before
+	public void init() {
+		accountsService.clearAccounts();
+		fromAccount = new Account("Id-sched-1", new BigDecimal(100));
+		toAccount = new Account("Id-sched-2", new BigDecimal(0));
+		accountsService.createAccount(fromAccount);
+		accountsService.createAccount(toAccount);
+	}
+	
+	@Test
+	public void schedule_ExecutesWhenDue() throws InterruptedException {
+		ScheduledTransfer transfer = scheduledTransferService.schedule(fromAccount.getAccountId(),
+				toAccount.getAccountId(), new BigDecimal(10), System.currentTimeMillis() + 200);
+		Assert.assertNotNull(scheduledTransferService.getScheduledTransfer(transfer.getId()));
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while (scheduledTransferService.getScheduledTransfer(transfer.getId()) != null
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		Assert.assertNull("Transfer should have been executed", scheduledTransferService.getScheduledTransfer(transfer
+				.getId()));
+		Assert.assertEquals(0, new BigDecimal(90).compareTo(fromAccount.getBalance()));
+		Assert.assertEquals(0, new BigDecimal(10).compareTo(toAccount.getBalance()));
+	}
+	
+	@Test
+	public void cancel_PreventsExecution() {
+		ScheduledTransfer transfer = scheduledTransferService.schedule(fromAccount.getAccountId(),
+				toAccount.getAccountId(), new BigDecimal(10), System.currentTimeMillis() + 60000);
+		
+		Assert.assertTrue(scheduledTransferService.cancel(transfer.getId()));
+		Assert.assertFalse("Cancelling twice should fail", scheduledTransferService.cancel(transfer.getId()));
+		Assert.assertNull(scheduledTransferService.getScheduledTransfer(transfer.getId()));
+	}
+	
+	@Test
+	public void timingWheel_ExpiresInOrderAcrossLevels() {
+		TimingWheel<Long> wheel = new TimingWheel<>(1, 0);
+		List<TimingWheel.Timeout<Long>> timeouts = new ArrayList<>();
+		for (long due = 1; due < 1_000_000; due *= 3) {
+			timeouts.add(wheel.schedule(due, due));
+		}
+		Assert.assertTrue(wheel.cancel(timeouts.get(5)));
+		
+		int expired = 0;
+		for (long now = 0; now < 1_000_000; now += 10) {
+			for (TimingWheel.Timeout<Long> timeout : wheel.advance(now)) {
+				Assert.assertTrue("Should not expire early", timeout.getDueMillis() <= now);
+				Assert.assertTrue("Should expire within one advance", now - timeout.getDueMillis() < 10);
+				expired++;
+			}
+		}
+		Assert.assertEquals(timeouts.size() - 1, expired);
+		Assert.assertEquals(0, wheel.size());
+	}
+}
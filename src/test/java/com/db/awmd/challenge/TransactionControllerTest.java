@@ -46,7 +46,7 @@ public class TransactionControllerTest {
 	public void prepareMockMvc() {
 		this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
 		// Reset the existing accounts before each test.
-		accountsService.getAccountsRepository().clearAccounts();
+		accountsService.clearAccounts();
 	}
 	
 	@Test
@@ -117,4 +117,23 @@ public class TransactionControllerTest {
 				"&amountToTransfer=" + amountToTransfer).contentType(MediaType
 				.APPLICATION_JSON)).andExpect(status().isBadRequest());
 	}
+	
+	@Test
+	public void transfer_BulkLane() throws Exception {
+		this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountId\":\"Id-129\",\"balance\":100}")).andExpect(status().isCreated());
+		this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountId\":\"Id-130\",\"balance\":0}")).andExpect(status().isCreated());
+		
+		this.mockMvc.perform(post("/v1/transactions/bulk/transfer?fromAccountId=Id-129&toAccountId=Id-130" +
+				"&amountToTransfer=10").contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+		this.mockMvc.perform(post("/v1/transactions/transfer?fromAccountId=Id-129&toAccountId=Id-130" +
+				"&amountToTransfer=10").header("X-Transfer-Priority", "bulk").contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk());
+		this.mockMvc.perform(post("/v1/transactions/transfer?fromAccountId=Id-129&toAccountId=Id-130" +
+				"&amountToTransfer=10").header("X-Transfer-Priority", "urgent").contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isBadRequest());
+		
+		Assert.assertTrue(new BigDecimal(20).compareTo(this.accountsService.getAccount("Id-130").getBalance()) == 0);
+	}
 }
@@ -0,0 +1,278 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.AccountBusyException;
+import com.db.awmd.challenge.exception.LowBalanceException;
+import com.db.awmd.challenge.exception.ServiceOverloadedException;
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsRepositoryWriteBehind;
+import com.db.awmd.challenge.repository.FileAccountStore;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.HotAccountTracker;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmissionLimiter;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs large numbers of randomized concurrent transfers against every transfer setup and checks, while they run, that
+ * no money is created or lost, that no balance goes negative and that transfers keep making progress. Reports the
+ * sustained throughput and latency percentiles of the transfers that went through, declined and shed ones are counted
+ * and timed apart.
+ * <p>
+ * Skipped unless run with {@code -Dstress=true}, it takes too long for every build. The number of transfers per run
+ * defaults to {@value #DEFAULT_TRANSFERS}; set {@code -Dstress.transfers} for longer runs and {@code -Dstress.min-tps}
+ * to fail on throughput regressions.
+ */
+public class TransactionServiceStressTest {
+
+	private static final Logger log = LoggerFactory.getLogger(TransactionServiceStressTest.class);
+
+	private static final int DEFAULT_TRANSFERS = 200_000;
+	private static final int TRANSFERS = Integer.getInteger("stress.transfers", DEFAULT_TRANSFERS);
+	private static final long MIN_TRANSFERS_PER_SECOND = Long.getLong("stress.min-tps", 0);
+	private static final int THREADS = 16;
+	private static final int ACCOUNTS = 1000;
+	private static final BigDecimal INITIAL_BALANCE = new BigDecimal(1000);
+	private static final long STALL_MILLIS = 10_000;
+	private static final long CHECK_INTERVAL_MILLIS = 50;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void requireStressProperty() {
+		Assume.assumeTrue("stress suite disabled, run with -Dstress=true", Boolean.getBoolean("stress"));
+	}
+
+	@Test(timeout = 600_000)
+	public void uniformTransfers() throws Exception {
+		forEachSetup("uniform", random -> random.nextInt(ACCOUNTS), random -> random.nextInt(ACCOUNTS));
+	}
+
+	@Test(timeout = 600_000)
+	public void skewedTransfers() throws Exception {
+		// a few accounts take most of the traffic, roughly power-law distributed
+		forEachSetup("skewed", TransactionServiceStressTest::skewed, TransactionServiceStressTest::skewed);
+	}
+
+	@Test(timeout = 600_000)
+	public void cyclicTransfers() throws Exception {
+		// every thread walks the A->B->C->A ring in its own direction, the classic lock-order deadlock pattern
+		forEachSetup("cyclic", random -> random.nextInt(3), null);
+	}
+
+	private static int skewed(ThreadLocalRandom random) {
+		double r = random.nextDouble();
+		return (int) (ACCOUNTS * r * r * r * r);
+	}
+
+	private void forEachSetup(String scenario, AccountPicker from, AccountPicker to) throws Exception {
+		run(scenario, "in-memory", new AccountsRepositoryInMemory(), TransferAdmissionLimiter.unlimited(), from, to);
+
+		// cache smaller than the account set, so that transfers keep racing with eviction and reloads
+		AccountsRepositoryWriteBehind writeBehind = new AccountsRepositoryWriteBehind(
+				new FileAccountStore(folder.newFile().toPath(), false), ACCOUNTS / 4, 20, 1000);
+		try {
+			run(scenario, "write-behind", writeBehind, TransferAdmissionLimiter.unlimited(), from, to);
+		} finally {
+			writeBehind.close();
+		}
+
+		run(scenario, "admission-limited", new AccountsRepositoryInMemory(),
+				new TransferAdmissionLimiter(true, 8, 4, 64, 4, 20), from, to);
+	}
+
+	private void run(String scenario, String setup, AccountsRepository repository, TransferAdmissionLimiter limiter,
+	                 AccountPicker fromPicker, AccountPicker toPicker) throws Exception {
+		AccountsService accountsService = new AccountsService(repository);
+		NotificationService notificationService = (account, description) -> { };
+		TransactionService transactionService = new TransactionService(accountsService, notificationService, limiter,
+				HotAccountTracker.disabled(), Collections.emptyList());
+
+		List<String> accountIds = new ArrayList<>();
+		for (int i = 0; i < ACCOUNTS; i++) {
+			// created in index order, so that lock order (handle order) matches the index order used by the checker
+			String accountId = String.format("Id-%05d", i);
+			accountsService.createAccount(new Account(accountId, INITIAL_BALANCE));
+			accountIds.add(accountId);
+		}
+		BigDecimal expectedTotal = INITIAL_BALANCE.multiply(new BigDecimal(ACCOUNTS));
+
+		AtomicLong remaining = new AtomicLong(TRANSFERS);
+		// attempts show progress, only transferred ones count for throughput and latency
+		AtomicLong attempted = new AtomicLong();
+		AtomicLong transferred = new AtomicLong();
+		AtomicLong declined = new AtomicLong();
+		AtomicLong shed = new AtomicLong();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		LatencyHistogram latency = new LatencyHistogram();
+		LatencyHistogram rejectLatency = new LatencyHistogram();
+		CountDownLatch done = new CountDownLatch(THREADS);
+
+		long started = System.nanoTime();
+		for (int t = 0; t < THREADS; t++) {
+			boolean forward = t % 2 == 0;
+			Thread worker = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				try {
+					while (remaining.getAndDecrement() > 0 && failure.get() == null) {
+						int from = fromPicker.pick(random);
+						int to = toPicker == null ? (from + (forward ? 1 : 2)) % 3 : toPicker.pick(random);
+						if (from == to) {
+							to = (to + 1) % ACCOUNTS;
+						}
+						BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(10_000), 2);
+						long transferStarted = System.nanoTime();
+						try {
+							transactionService.transfer(accountIds.get(from), accountIds.get(to), amount);
+							latency.record(System.nanoTime() - transferStarted);
+							transferred.incrementAndGet();
+						} catch (LowBalanceException e) {
+							rejectLatency.record(System.nanoTime() - transferStarted);
+							declined.incrementAndGet();
+						} catch (ServiceOverloadedException | AccountBusyException e) {
+							rejectLatency.record(System.nanoTime() - transferStarted);
+							shed.incrementAndGet();
+						}
+						attempted.incrementAndGet();
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					done.countDown();
+				}
+			}, "stress-" + scenario + "-" + t);
+			worker.setDaemon(true);
+			worker.start();
+		}
+
+		// invariants are checked on their own thread, so that the stall detection below still fires if it deadlocks
+		AtomicLong checks = new AtomicLong();
+		Thread checker = new Thread(() -> {
+			try {
+				while (done.getCount() > 0 && failure.get() == null) {
+					checkInvariants(scenario, setup, accountsService, accountIds, expectedTotal);
+					checks.incrementAndGet();
+					Thread.sleep(CHECK_INTERVAL_MILLIS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		}, "stress-" + scenario + "-checker");
+		checker.setDaemon(true);
+		checker.start();
+		
+		long lastProgress = -1;
+		long lastProgressAt = System.currentTimeMillis();
+		while (!done.await(CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+			long progress = attempted.get();
+			if (progress != lastProgress) {
+				lastProgress = progress;
+				lastProgressAt = System.currentTimeMillis();
+			} else if (System.currentTimeMillis() - lastProgressAt > STALL_MILLIS) {
+				failure.compareAndSet(null, new AssertionError(scenario + "/" + setup + ": no transfer attempt finished for "
+						+ STALL_MILLIS + "ms\n" + threadDump()));
+				break;
+			}
+		}
+		checker.join(STALL_MILLIS);
+		long elapsedNanos = System.nanoTime() - started;
+		if (failure.get() != null) {
+			throw new AssertionError(scenario + "/" + setup + " failed", failure.get());
+		}
+		checkInvariants(scenario, setup, accountsService, accountIds, expectedTotal);
+
+		long transfersPerSecond = transferred.get() * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsedNanos);
+		log.info(String.format("stress %-8s %-17s %,d transferred (%,d declined, %,d shed) in %,d ms: %,d " +
+						"transfers/s, %d invariant checks, latency us p50=%d p99=%d p99.9=%d max=%d, " +
+						"rejected p50=%d p99=%d", scenario, setup, transferred.get(), declined.get(), shed.get(),
+				TimeUnit.NANOSECONDS.toMillis(elapsedNanos), transfersPerSecond, checks.get() + 1,
+				latency.getPercentile(50) / 1000, latency.getPercentile(99) / 1000, latency.getPercentile(99.9) / 1000,
+				latency.getMax() / 1000, rejectLatency.getPercentile(50) / 1000, rejectLatency.getPercentile(99) / 1000));
+		Assert.assertTrue(scenario + "/" + setup + " throughput " + transfersPerSecond + " transfers/s is below "
+				+ MIN_TRANSFERS_PER_SECOND, transfersPerSecond >= MIN_TRANSFERS_PER_SECOND);
+	}
+
+	/**
+	 * Takes every account monitor in the same order transfers use (greatest handle first), so the balances read
+	 * form a consistent snapshot, and checks conservation of money and non-negative balances on it.
+	 */
+	private void checkInvariants(String scenario, String setup, AccountsService accountsService,
+	                             List<String> accountIds, BigDecimal expectedTotal) {
+		Account[] locked = new Account[accountIds.size()];
+		while (!lockAndCheck(accountsService, accountIds, locked, accountIds.size() - 1, scenario + "/" + setup,
+				expectedTotal)) {
+			// an account was evicted and reloaded while we were locking, take the snapshot again
+		}
+	}
+
+	private boolean lockAndCheck(AccountsService accountsService, List<String> accountIds, Account[] locked,
+	                             int index, String run, BigDecimal expectedTotal) {
+		if (index >= 0) {
+			Account account = accountsService.getAccount(accountIds.get(index));
+			synchronized (account) {
+				locked[index] = account;
+				return lockAndCheck(accountsService, accountIds, locked, index - 1, run, expectedTotal);
+			}
+		}
+		BigDecimal total = BigDecimal.ZERO;
+		for (int i = 0; i < locked.length; i++) {
+			if (accountsService.getAccount(accountIds.get(i)) != locked[i]) {
+				return false;
+			}
+			Assert.assertTrue(run + ": balance of " + accountIds.get(i) + " went negative: " + locked[i].getBalance(),
+					locked[i].getBalance().signum() >= 0);
+			total = total.add(locked[i].getBalance());
+		}
+		Assert.assertEquals(run + ": total money is not conserved", 0, expectedTotal.compareTo(total));
+		return true;
+	}
+
+	private static String threadDump() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		StringBuilder dump = new StringBuilder();
+		long[] deadlocked = threads.findDeadlockedThreads();
+		if (deadlocked != null) {
+			dump.append("Deadlocked threads:\n");
+			for (ThreadInfo info : threads.getThreadInfo(deadlocked, true, true)) {
+				dump.append(info);
+			}
+		}
+		for (ThreadInfo info : threads.dumpAllThreads(true, true)) {
+			if (info.getThreadName().startsWith("stress-")) {
+				dump.append(info);
+			}
+		}
+		return dump.toString();
+	}
+
+	private interface AccountPicker {
+
+		int pick(ThreadLocalRandom random);
+	}
+}
@@ -46,7 +46,7 @@ public class TransactionServiceTest {
 	@Before
 	public void init() {
 		// Reset the existing accounts before each test.
-		accountsService.getAccountsRepository().clearAccounts();
+		accountsService.clearAccounts();
 		
 		// Create test accounts
 		String uniqueId = "Id-" + System.currentTimeMillis();
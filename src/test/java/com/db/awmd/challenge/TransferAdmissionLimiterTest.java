@@ -0,0 +1,112 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.exception.AccountBusyException;
+import com.db.awmd.challenge.exception.ServiceOverloadedException;
+import com.db.awmd.challenge.service.TransferAdmissionLimiter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.fail;
+
+public class TransferAdmissionLimiterTest {
+	
+	// reported transfer latency, large enough that the time the test itself takes does not move it
+	private static final long LATENCY_MICROS = 100_000;
+	
+	@Test
+	public void acquire_RejectsAboveLimit() {
+		TransferAdmissionLimiter limiter = new TransferAdmissionLimiter(true, 2, 2, 2, 0, 100);
+		long first = limiter.acquire("Id-1", "Id-2");
+		limiter.acquire("Id-3", "Id-4");
+		try {
+			limiter.acquire("Id-5", "Id-6");
+			fail("Should have rejected transfer above the concurrency limit");
+		} catch (ServiceOverloadedException e) {
+			Assert.assertEquals(1, limiter.getRejectedOverload());
+		}
+		
+		limiter.release("Id-1", "Id-2", first);
+		limiter.acquire("Id-5", "Id-6");
+		Assert.assertEquals(2, limiter.getInFlight());
+	}
+	
+	@Test
+	public void acquire_RejectsAbovePerAccountLimit() {
+		TransferAdmissionLimiter limiter = new TransferAdmissionLimiter(true, 10, 10, 10, 1, 100);
+		long first = limiter.acquire("Id-1", "Id-2");
+		try {
+			limiter.acquire("Id-3", "Id-2");
+			fail("Should have rejected second transfer into the same account");
+		} catch (AccountBusyException e) {
+			Assert.assertEquals(1, limiter.getRejectedAccountBusy());
+		}
+		// the rejected transfer must not leave its other account marked as busy
+		long other = limiter.acquire("Id-3", "Id-4");
+		limiter.release("Id-3", "Id-4", other);
+		
+		limiter.release("Id-1", "Id-2", first);
+		limiter.acquire("Id-3", "Id-2");
+		Assert.assertEquals(1, limiter.getInFlight());
+	}
+	
+	@Test
+	public void release_RisingLatencyShrinksLimit() {
+		// a window of 0 closes a window on every release
+		TransferAdmissionLimiter limiter = new TransferAdmissionLimiter(true, 100, 8, 100, 0, 0);
+		
+		int previous = shrink(limiter);
+		
+		Assert.assertTrue("limit should have shrunk, is " + previous, previous < 75);
+		Assert.assertTrue(previous >= 8);
+	}
+	
+	@Test
+	public void release_FlatLatencyGrowsLimitBackToMax() {
+		TransferAdmissionLimiter limiter = new TransferAdmissionLimiter(true, 100, 8, 100, 0, 0);
+		int shrunk = shrink(limiter);
+		
+		int previous = shrunk;
+		for (int round = 0; round < 1000 && limiter.getLimit() < 100; round++) {
+			// use the whole limit, an idle service does not grow it
+			transfers(limiter, limiter.getLimit(), LATENCY_MICROS);
+			Assert.assertTrue(limiter.getLimit() >= previous);
+			previous = limiter.getLimit();
+		}
+		
+		Assert.assertTrue(shrunk < 75);
+		Assert.assertEquals(100, limiter.getLimit());
+	}
+	
+	/**
+	 * Feeds a latency baseline, then latency rising by half every window.
+	 * @return the limit after the last window, each window must not have grown it
+	 */
+	private static int shrink(TransferAdmissionLimiter limiter) {
+		transfers(limiter, 1, LATENCY_MICROS);
+		int previous = limiter.getLimit();
+		double latencyMicros = LATENCY_MICROS;
+		for (int window = 0; window < 10; window++) {
+			latencyMicros *= 1.5;
+			transfers(limiter, 1, (long) latencyMicros);
+			Assert.assertTrue(limiter.getLimit() <= previous);
+			previous = limiter.getLimit();
+		}
+		return previous;
+	}
+	
+	/**
+	 * Runs the given number of transfers at once, each reported as taking the given latency.
+	 */
+	private static void transfers(TransferAdmissionLimiter limiter, int count, long latencyMicros) {
+		long[] started = new long[count];
+		for (int i = 0; i < count; i++) {
+			started[i] = limiter.acquire("Id-" + (2 * i), "Id-" + (2 * i + 1));
+		}
+		for (int i = 0; i < count; i++) {
+			limiter.release("Id-" + (2 * i), "Id-" + (2 * i + 1),
+					started[i] - TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.ServiceOverloadedException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.HotAccountTracker;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmissionLimiter;
+import com.db.awmd.challenge.service.TransferLane;
+import com.db.awmd.challenge.service.TransferScheduler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TransferSchedulerTest {
+	
+	private final List<String> transferred = Collections.synchronizedList(new ArrayList<>());
+	
+	/**
+	 * Transfers from the "blocking" account hold their slot until the latch is released.
+	 */
+	private final CountDownLatch unblock = new CountDownLatch(1);
+	
+	private final List<Thread> threads = new ArrayList<>();
+	
+	private TransactionService transactionService;
+	
+	@Before
+	public void createAccounts() {
+		AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		transactionService = new TransactionService(accountsService, (account, description) -> {
+			if (description.contains("transferred")) {
+				transferred.add(account.getAccountId());
+				if (account.getAccountId().equals("blocking")) {
+					awaitUninterruptibly(unblock);
+				}
+			}
+		}, TransferAdmissionLimiter.unlimited(), HotAccountTracker.disabled(), Collections.emptyList());
+		for (String accountId : new String[] {"blocking", "interactive", "bulk", "sink"}) {
+			accountsService.createAccount(new Account(accountId, new BigDecimal(1000)));
+		}
+	}
+	
+	@After
+	public void joinThreads() throws InterruptedException {
+		unblock.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+	
+	@Test
+	public void transfer_RunsRightAwayWhenIdle() {
+		TransferScheduler scheduler = scheduler(4, 1000, 4, 4, 10, 1, 4, 10);
+		
+		scheduler.transfer(TransferLane.BULK, "bulk", "sink", BigDecimal.ONE);
+		
+		Assert.assertEquals(1L, lane(scheduler, "bulk").get("granted"));
+		Assert.assertEquals(0L, lane(scheduler, "bulk").get("queuedTotal"));
+	}
+	
+	@Test
+	public void transfer_QueuedLanesServedByWeight() throws InterruptedException {
+		TransferScheduler scheduler = scheduler(1, 10_000, 4, 1, 100, 1, 1, 100);
+		start(scheduler, TransferLane.INTERACTIVE, "blocking");
+		awaitStats(scheduler, "interactive", "active", 1);
+		for (int i = 0; i < 20; i++) {
+			start(scheduler, TransferLane.BULK, "bulk");
+			start(scheduler, TransferLane.INTERACTIVE, "interactive");
+		}
+		awaitStats(scheduler, "interactive", "queued", 20);
+		awaitStats(scheduler, "bulk", "queued", 20);
+		
+		unblock.countDown();
+		joinThreads();
+		
+		List<String> firstTen = transferred.subList(1, 11);
+		Assert.assertEquals(firstTen.toString(), 2, Collections.frequency(firstTen, "bulk"));
+		Assert.assertEquals(41, transferred.size());
+	}
+	
+	@Test
+	public void transfer_LaneLimitLeavesCapacityToOtherLanes() throws InterruptedException {
+		TransferScheduler scheduler = scheduler(4, 10_000, 4, 4, 100, 1, 1, 100);
+		start(scheduler, TransferLane.BULK, "blocking");
+		awaitStats(scheduler, "bulk", "active", 1);
+		start(scheduler, TransferLane.BULK, "bulk");
+		awaitStats(scheduler, "bulk", "queued", 1);
+		
+		scheduler.transfer(TransferLane.INTERACTIVE, "interactive", "sink", BigDecimal.ONE);
+		
+		Assert.assertFalse(transferred.contains("bulk"));
+		Assert.assertTrue(transferred.contains("interactive"));
+	}
+	
+	@Test(expected = ServiceOverloadedException.class)
+	public void transfer_LaneQueueFull() throws InterruptedException {
+		TransferScheduler scheduler = scheduler(1, 10_000, 4, 1, 100, 1, 1, 1);
+		start(scheduler, TransferLane.BULK, "blocking");
+		awaitStats(scheduler, "bulk", "active", 1);
+		start(scheduler, TransferLane.BULK, "bulk");
+		awaitStats(scheduler, "bulk", "queued", 1);
+		
+		scheduler.transfer(TransferLane.BULK, "bulk", "sink", BigDecimal.ONE);
+	}
+	
+	@Test
+	public void transfer_QueueTimeout() throws InterruptedException {
+		TransferScheduler scheduler = scheduler(1, 50, 4, 1, 100, 1, 1, 100);
+		start(scheduler, TransferLane.INTERACTIVE, "blocking");
+		awaitStats(scheduler, "interactive", "active", 1);
+		
+		try {
+			scheduler.transfer(TransferLane.INTERACTIVE, "interactive", "sink", BigDecimal.ONE);
+			Assert.fail("Transfer should have timed out waiting for a slot");
+		} catch (ServiceOverloadedException e) {
+			Assert.assertEquals(1L, lane(scheduler, "interactive").get("timedOut"));
+			Assert.assertEquals(0, lane(scheduler, "interactive").get("queued"));
+		}
+	}
+	
+	@Test
+	public void transfer_InterruptedWhileQueued() throws InterruptedException {
+		TransferScheduler scheduler = scheduler(1, 10_000, 4, 1, 100, 1, 1, 100);
+		start(scheduler, TransferLane.INTERACTIVE, "blocking");
+		awaitStats(scheduler, "interactive", "active", 1);
+		List<Exception> failures = Collections.synchronizedList(new ArrayList<>());
+		Thread queued = new Thread(() -> {
+			try {
+				scheduler.transfer(TransferLane.BULK, "bulk", "sink", BigDecimal.ONE);
+			} catch (ServiceOverloadedException e) {
+				failures.add(e);
+			}
+		});
+		queued.start();
+		awaitStats(scheduler, "bulk", "queued", 1);
+		
+		queued.interrupt();
+		queued.join(5000);
+		
+		Assert.assertFalse(queued.isAlive());
+		Assert.assertEquals(1, failures.size());
+		Assert.assertEquals(0, lane(scheduler, "bulk").get("queued"));
+		Assert.assertEquals(0L, lane(scheduler, "bulk").get("timedOut"));
+	}
+	
+	@Test
+	public void transfer_QueuedGrantedWhenAdmissionLimitGrows() throws InterruptedException {
+		TransferAdmissionLimiter admissionLimiter = new TransferAdmissionLimiter(true, 1, 1, 8, 0, 0);
+		TransferScheduler scheduler = new TransferScheduler(transactionService, admissionLimiter, 8, 200, 4, 8, 100, 1,
+				8, 100);
+		start(scheduler, TransferLane.INTERACTIVE, "blocking");
+		awaitStats(scheduler, "interactive", "active", 1);
+		start(scheduler, TransferLane.BULK, "bulk");
+		awaitStats(scheduler, "bulk", "queued", 1);
+		
+		// transfers outside the scheduler raise the limit, no slot of the scheduler is released meanwhile
+		for (int i = 0; i < 100 && admissionLimiter.getLimit() < 2; i++) {
+			long started = admissionLimiter.acquire("Id-1", "Id-2");
+			admissionLimiter.release("Id-1", "Id-2", started - TimeUnit.MILLISECONDS.toNanos(100));
+		}
+		Assert.assertTrue(admissionLimiter.getLimit() >= 2);
+		
+		// the blocked transfer holds its slot, the queued one gets the new slot once its queue timeout is due
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!transferred.contains("bulk") && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		Assert.assertTrue(transferred.contains("bulk"));
+		Assert.assertEquals(1L, lane(scheduler, "bulk").get("granted"));
+		Assert.assertEquals(0L, lane(scheduler, "bulk").get("timedOut"));
+	}
+	
+	@Test
+	public void tryTransfer_RejectsInsteadOfQueueing() throws InterruptedException {
+		TransferScheduler scheduler = scheduler(1, 10_000, 4, 1, 100, 1, 1, 100);
+		scheduler.tryTransfer(TransferLane.BULK, "bulk", "sink", BigDecimal.ONE);
+		start(scheduler, TransferLane.INTERACTIVE, "blocking");
+		awaitStats(scheduler, "interactive", "active", 1);
+		
+		try {
+			scheduler.tryTransfer(TransferLane.BULK, "bulk", "sink", BigDecimal.ONE);
+			Assert.fail("Transfer should have been rejected while no slot is free");
+		} catch (ServiceOverloadedException e) {
+			Assert.assertEquals(1L, lane(scheduler, "bulk").get("granted"));
+			Assert.assertEquals(1L, lane(scheduler, "bulk").get("rejected"));
+			Assert.assertEquals(0L, lane(scheduler, "bulk").get("queuedTotal"));
+		}
+	}
+	
+	private TransferScheduler scheduler(int maxConcurrent, long queueTimeoutMillis, int interactiveWeight,
+	                                    int interactiveMaxConcurrent, int interactiveMaxQueued, int bulkWeight,
+	                                    int bulkMaxConcurrent, int bulkMaxQueued) {
+		return new TransferScheduler(transactionService, TransferAdmissionLimiter.unlimited(), maxConcurrent,
+				queueTimeoutMillis, interactiveWeight, interactiveMaxConcurrent, interactiveMaxQueued, bulkWeight,
+				bulkMaxConcurrent, bulkMaxQueued);
+	}
+	
+	private void start(TransferScheduler scheduler, TransferLane lane, String fromAccountId) {
+		Thread thread = new Thread(() -> scheduler.transfer(lane, fromAccountId, "sink", BigDecimal.ONE));
+		threads.add(thread);
+		thread.start();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> lane(TransferScheduler scheduler, String lane) {
+		return (Map<String, Object>) scheduler.getStats().get(lane);
+	}
+	
+	private static void awaitStats(TransferScheduler scheduler, String lane, String stat, int expected)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!Integer.valueOf(expected).equals(lane(scheduler, lane).get(stat))) {
+			Assert.assertTrue(lane + " " + stat + " should reach " + expected, System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+	}
+	
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
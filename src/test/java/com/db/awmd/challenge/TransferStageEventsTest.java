@@ -0,0 +1,107 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InvalidAmountException;
+import com.db.awmd.challenge.jfr.TransferStages;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.HotAccountTracker;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmissionLimiter;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class TransferStageEventsTest {
+	
+	private static final String[] STAGES = {"TransferValidation", "AccountLookup", "MonitorWait", "BalanceUpdate",
+			"TransferNotification"};
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void transfer_RecordsEveryStage() throws Exception {
+		AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		TransactionService transactionService = new TransactionService(accountsService, (account, description) -> { },
+				TransferAdmissionLimiter.unlimited(), HotAccountTracker.disabled(), Collections.emptyList());
+		accountsService.createAccount(new Account("Id-1", new BigDecimal(100)));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal(50)));
+		
+		Path dump = folder.newFile("transfer.jfr").toPath();
+		try (Recording recording = new Recording()) {
+			// record every stage, not only the slow ones
+			for (String stage : STAGES) {
+				recording.enable("com.db.awmd.challenge." + stage).withThreshold(Duration.ZERO);
+			}
+			recording.start();
+			transactionService.transfer("Id-1", "Id-2", new BigDecimal("10.50"));
+			recording.stop();
+			recording.dump(dump);
+		}
+		
+		List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+		for (String stage : STAGES) {
+			List<RecordedEvent> recorded = events.stream()
+					.filter(event -> event.getEventType().getName().equals("com.db.awmd.challenge." + stage))
+					.collect(Collectors.toList());
+			Assert.assertFalse("no " + stage + " event", recorded.isEmpty());
+			for (RecordedEvent event : recorded) {
+				Assert.assertEquals("Id-1", event.getString("fromAccountId"));
+				Assert.assertEquals("Id-2", event.getString("toAccountId"));
+				Assert.assertEquals("10.50", event.getString("amount"));
+			}
+		}
+		List<Integer> lockOrders = events.stream()
+				.filter(event -> event.getEventType().getName().equals("com.db.awmd.challenge.MonitorWait"))
+				.map(event -> event.getInt("lockOrder"))
+				.sorted()
+				.collect(Collectors.toList());
+		Assert.assertEquals(Arrays.asList(1, 2), lockOrders);
+	}
+	
+	@Test
+	public void transfer_RecordsFailedValidation() throws Exception {
+		TransactionService transactionService = new TransactionService(
+				new AccountsService(new AccountsRepositoryInMemory()), (account, description) -> { },
+				TransferAdmissionLimiter.unlimited(), HotAccountTracker.disabled(), Collections.emptyList());
+		
+		Path dump = folder.newFile("validation.jfr").toPath();
+		try (Recording recording = new Recording()) {
+			recording.enable("com.db.awmd.challenge.TransferValidation").withThreshold(Duration.ZERO);
+			recording.start();
+			try {
+				transactionService.transfer("Id-1", "Id-2", new BigDecimal(-1));
+				Assert.fail("negative amount should be rejected");
+			} catch (InvalidAmountException e) {
+				// expected
+			}
+			recording.stop();
+			recording.dump(dump);
+		}
+		
+		List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals("-1", events.get(0).getString("amount"));
+	}
+	
+	@Test
+	public void stages_NotAllocatedWithoutRecording() {
+		TransferStages stages = TransferStages.get();
+		
+		Assert.assertSame(stages.validation(), stages.balanceUpdate());
+		Assert.assertSame(stages.monitorWait("Id-1", 1), stages.accountLookup("Id-2"));
+	}
+}
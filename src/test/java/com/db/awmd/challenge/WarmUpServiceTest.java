@@ -0,0 +1,93 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountResponseCache;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BalanceChangeListener;
+import com.db.awmd.challenge.service.HotAccountTracker;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmissionLimiter;
+import com.db.awmd.challenge.service.TransferScheduler;
+import com.db.awmd.challenge.service.WarmUpService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class WarmUpServiceTest {
+
+	private AccountsService accountsService;
+
+	private AccountResponseCache accountResponseCache;
+
+	private HotAccountTracker hotAccountTracker;
+
+	@Before
+	public void createApplication() {
+		accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		accountsService.createAccount(new Account("Id-1", new BigDecimal(100)));
+		accountResponseCache = new AccountResponseCache(accountsService, new ObjectMapper(), 100);
+		hotAccountTracker = new HotAccountTracker(true, 3, 60, 50);
+	}
+
+	@Test
+	public void warmUp_RunsBeforeReady() {
+		// stable rounds can never be reached, so the warm-up runs up to its iteration budget
+		WarmUpService warmUpService = warmUpService(true, Integer.MAX_VALUE, 0);
+		Assert.assertFalse(warmUpService.isReady());
+
+		warmUpService.onContextRefreshed();
+
+		Map<String, Object> report = warmUpService.getReport();
+		Assert.assertTrue(warmUpService.isReady());
+		Assert.assertEquals(true, report.get("ready"));
+		Assert.assertEquals(5_000L, report.get("iterations"));
+		Assert.assertEquals(5, report.get("rounds"));
+		Assert.assertEquals("max iterations", report.get("stoppedBecause"));
+	}
+
+	@Test
+	public void warmUp_LeavesApplicationStateAlone() {
+		WarmUpService warmUpService = warmUpService(true, Integer.MAX_VALUE, 0);
+
+		warmUpService.onContextRefreshed();
+
+		Assert.assertEquals(new BigDecimal(100), accountsService.getAccount("Id-1").getBalance());
+		Assert.assertEquals(0, accountResponseCache.getStats().get("size"));
+		Assert.assertEquals(0L, accountResponseCache.getStats().get("misses"));
+		Map<String, Object> hotAccounts = hotAccountTracker.getHotAccounts(10);
+		Assert.assertEquals(Collections.emptyMap(), hotAccounts.get("transfers"));
+		Assert.assertEquals(Collections.emptyMap(), hotAccounts.get("contended"));
+	}
+
+	@Test
+	public void warmUp_Disabled() {
+		WarmUpService warmUpService = warmUpService(false, 3, 2);
+
+		warmUpService.onContextRefreshed();
+
+		Assert.assertTrue(warmUpService.isReady());
+		Assert.assertEquals(false, warmUpService.getReport().get("enabled"));
+		Assert.assertNull(warmUpService.getReport().get("iterations"));
+	}
+
+	/**
+	 * A warm-up wired like the application's, to the beans built in {@link #createApplication}.
+	 */
+	private WarmUpService warmUpService(boolean enabled, int stableRounds, long stableCompileMillis) {
+		TransferAdmissionLimiter admissionLimiter = new TransferAdmissionLimiter(true, 64, 8, 1024, 0, 100);
+		List<BalanceChangeListener> listeners = Collections.singletonList(accountResponseCache);
+		TransactionService transactionService = new TransactionService(accountsService, (account, description) -> { },
+				admissionLimiter, hotAccountTracker, listeners);
+		TransferScheduler transferScheduler = new TransferScheduler(transactionService, admissionLimiter, 64, 2000, 8,
+				64, 48, 1, 16, 32);
+		return new WarmUpService(new ObjectMapper(), admissionLimiter, hotAccountTracker, listeners, transferScheduler,
+				enabled, 1_000, stableRounds, stableCompileMillis, 5_000, 60_000);
+	}
+}